@@ -0,0 +1,164 @@
+/*
+    AdaptiveEngine.java
+
+    An engine that moves the board between other engines as it runs, to
+    whichever should compute it fastest: a random soup starts out dense
+    and busy, where the packed engine wins, and decays into scattered
+    ash, where skipping settled tiles or storing only the live cells
+    does better.
+ */
+
+// Three engines are kept for the same board: an ArrayEngine with the
+// table kernel (dense, skips settled tiles), a BitEngine (packed) and,
+// if the rule allows, a SparseEngine.  Only one, current, holds the
+// board; the rest sit empty.  Every samplePeriod generations, swap
+// estimates what a generation would cost on each engine, from the
+// population and, on the dense engine, the fraction of tiles still
+// active:
+//
+//   packed   one unit per cell of the board
+//   dense    denseCost units per cell of an active tile
+//   sparse   sparseCost units per live cell
+//
+// (the units are roughly nanoseconds on one thread; see Bench).  If
+// another engine looks at least twice as cheap as the current one, the
+// board is copied into it and it becomes current.  The activity of the
+// board is only known while it is on the dense engine; elsewhere the
+// last figure measured there is assumed, and the dense engine is tried
+// again whenever the population has halved since, in case the board has
+// settled.
+//
+// swap runs while no thread is computing, and the new engine is loaded
+// completely before it is made current, so the move is invisible to the
+// threading code and to the display.
+//
+class AdaptiveEngine implements LifeEngine {
+    private static final int samplePeriod = 16;   // generations between samples
+    private static final double denseCost = 10;
+    private static final double sparseCost = 100;
+
+    private final LifeEngine dense;
+    private final LifeEngine packed;
+    private final LifeEngine sparse;    // null under a rule with B0
+    private volatile LifeEngine current;
+
+    private final int rows;
+    private final int cols;
+    private long generation = 0;
+    private double activity = 1;        // fraction of tiles active, when last seen
+    private long probeBelow;            // population at which to try dense again
+
+    public int get(int i, int j) {
+        return current.get(i, j);
+    }
+
+    public void set(int i, int j, int v) {
+        current.set(i, j, v);
+    }
+
+    public void clear() {
+        current.clear();
+    }
+
+    public long population() {
+        return current.population();
+    }
+
+    public int activeTiles(int i) {
+        return current.activeTiles(i);
+    }
+
+    // A column alignment that suits both the dense and the packed engine.
+    //
+    public int columnAlign() {
+        return 64;
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        current.doGeneration(start, end);
+    }
+
+    // The sparse engine only computes whole rows.  All the blocks of a row
+    // of blocks have the same rows (see Partition), so the one at the left
+    // edge computes them, and the others have nothing to do.
+    //
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        LifeEngine e = current;
+        if (e.columnAlign() > 0) {
+            e.doGeneration(start, end, left, right);
+        } else if (left == 0) {
+            e.doGeneration(start, end);
+        }
+    }
+
+    public void swap() {
+        current.swap();
+        if (++generation % samplePeriod == 0) {
+            adapt();
+        }
+    }
+
+    // The engine the board is on now.
+    //
+    public LifeEngine getCurrent() {
+        return current;
+    }
+
+    // Estimate the cost of the next generation on each engine, and move
+    // the board if one is much cheaper.
+    //
+    private void adapt() {
+        long pop = current.population();
+        double cells = (double) rows * cols;
+        if (current == dense) {
+            long active = 0;
+            for (int i = 0; i < rows; i++) {
+                active += dense.activeTiles(i);
+            }
+            activity = active / (rows * Math.ceil(cols / 32.0));
+            probeBelow = pop / 2;
+        }
+
+        LifeEngine best = packed;
+        double bestCost = cells;
+        double costs[] = {cells * activity * denseCost,
+                          (sparse == null) ? Double.MAX_VALUE : pop * sparseCost};
+        LifeEngine engines[] = {dense, sparse};
+        double currentCost = (current == packed) ? cells : 0;
+        for (int k = 0; k < engines.length; k++) {
+            if (engines[k] == current) {
+                currentCost = costs[k];
+            }
+            if (costs[k] < bestCost) {
+                best = engines[k];
+                bestCost = costs[k];
+            }
+        }
+        if (current == packed && best == packed && pop < probeBelow) {
+            best = dense;       // may have settled: go and see
+            bestCost = 0;
+        }
+        if (best != current && bestCost < currentCost / 2) {
+            best.copyFrom(current, rows, cols);
+            LifeEngine old = current;
+            current = best;
+            old.clear();
+        }
+    }
+
+    // Constructor
+    //
+    public AdaptiveEngine(int R, int N, Coordinator C, Rule L) {
+        if (L.states() > 2) {
+            throw new IllegalArgumentException("AdaptiveEngine cannot run " + L);
+        }
+        rows = R;
+        cols = N;
+        dense = new ArrayEngine(R, N, C, L, new TableKernel(L));
+        packed = new BitEngine(R, N, C, L);
+        sparse = L.bornFromNothing() ? null : new SparseEngine(R, N, C, L);
+        current = dense;
+        probeBelow = 0;
+    }
+}
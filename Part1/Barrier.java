@@ -0,0 +1,295 @@
+/*
+    Barrier.java
+
+    The barrier at which the Workers of Part1 meet at the end of each
+    generation.  The last thread to arrive updates the board, and then
+    lets the others go on to the next generation.
+ */
+
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Four kinds, chosen by name with --barrier:
+//
+//   monitor  a counter under a lock, and wait / notifyAll: every waiter
+//            is woken, and then they all queue for the lock again
+//   sense    sense-reversing: one atomic counter, and a flag that the
+//            last thread flips, on which the rest wait
+//   tree     combining tree: threads arrive in groups of `radix', and
+//            only the last of each group goes on up the tree, so no
+//            counter is contended by more than radix threads
+//   phaser   java.util.concurrent.Phaser, with the update as onAdvance
+//
+// Except for the monitor and the Phaser, which have their own ways of
+// blocking, a waiting thread spins for a while, then yields, then parks;
+// the thread that opens the barrier unparks those that got that far.
+// While yielding or parked, a thread also checks whether the Coordinator
+// wants it to die, since it is not calling hesitate().
+//
+// Threads are numbered 0 .. parties-1, and state that belongs to one
+// thread is kept `pad' slots apart so that no two threads write to the
+// same cache line.
+//
+abstract class Barrier {
+    // The work done by the last thread to arrive, before the rest go on.
+    //
+    interface Action {
+        void run() throws Coordinator.KilledException;
+    }
+
+    private static final int spins = 100;       // before yielding
+    private static final int yields = 10;       // before parking
+    protected static final long parkNanos = 1000000;
+        // longest park, after which a thread checks the Coordinator again
+    protected static final int pad = 8;         // longs per cache line
+
+    protected final int parties;
+    protected final Coordinator c;
+    protected final Action action;
+
+    private final AtomicReferenceArray<Thread> sleepers;   // parked, by thread
+    private final long latency[];   // [id*pad] total ns, [id*pad+1] waits
+    protected volatile long releasedAt;   // System.nanoTime() of last opening
+
+    // Wait until all parties have called await; thread id is the caller.
+    //
+    public abstract void await(int id) throws Coordinator.KilledException;
+
+    public static Barrier create(String kind, int parties, Coordinator c, Action a) {
+        switch (kind) {
+            case "monitor":
+                return new MonitorBarrier(parties, c, a);
+            case "sense":
+                return new SenseBarrier(parties, c, a);
+            case "tree":
+                return new TreeBarrier(parties, c, a);
+            case "phaser":
+                return new PhaserBarrier(parties, c, a);
+            default:
+                throw new IllegalArgumentException("Unknown barrier: " + kind);
+        }
+    }
+
+    public static final String kinds[] = {"monitor", "sense", "tree", "phaser"};
+
+    // Average time, in nanoseconds, from the barrier opening to a waiting
+    // thread running again.
+    //
+    public double getLatency() {
+        long total = 0, waits = 0;
+        for (int id = 0; id < parties; id++) {
+            total += latency[id*pad];
+            waits += latency[id*pad + 1];
+        }
+        return (waits == 0) ? 0 : (double) total / waits;
+    }
+
+    // Called by thread id once it has seen the barrier open.
+    //
+    protected void woke(int id) {
+        latency[id*pad] += System.nanoTime() - releasedAt;
+        latency[id*pad + 1]++;
+    }
+
+    // Spin, yield, then park until open returns true.
+    //
+    protected void waitFor(int id, java.util.function.BooleanSupplier open)
+            throws Coordinator.KilledException {
+        for (int k = 0; !open.getAsBoolean(); k++) {
+            if (k < spins) {
+                Thread.onSpinWait();
+            } else if (k < spins + yields) {
+                Thread.yield();
+                c.poll();
+            } else {
+                sleepers.set(id, Thread.currentThread());
+                if (!open.getAsBoolean()) {
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+                sleepers.set(id, null);
+                c.poll();
+            }
+        }
+        woke(id);
+    }
+
+    // Wake the threads parked in waitFor, once open has become true.
+    //
+    protected void wakeSleepers() {
+        for (int id = 0; id < parties; id++) {
+            Thread t = sleepers.get(id);
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    protected Barrier(int P, Coordinator C, Action A) {
+        parties = P;
+        c = C;
+        action = A;
+        sleepers = new AtomicReferenceArray<>(P);
+        latency = new long[P*pad];
+    }
+}
+
+// What Worker.run used to do, with a generation number so that a
+// waiting thread can tell being released from being woken for nothing.
+//
+class MonitorBarrier extends Barrier {
+    private int count = 0;
+    private long phase = 0;
+
+    public synchronized void await(int id) throws Coordinator.KilledException {
+        if (++count < parties) {
+            long p = phase;
+            while (phase == p) {
+                try {
+                    wait(1);   // ms; then check the Coordinator
+                } catch (InterruptedException e) { }
+                c.poll();
+            }
+            woke(id);
+            return;
+        }
+        count = 0;
+        action.run();
+        releasedAt = System.nanoTime();
+        ++phase;
+        notifyAll();
+    }
+
+    MonitorBarrier(int P, Coordinator C, Action A) {
+        super(P, C, A);
+    }
+}
+
+class SenseBarrier extends Barrier {
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile boolean sense = false;
+    private final long local[];   // [id*pad]: 1 if thread id last waited for true
+
+    public void await(int id) throws Coordinator.KilledException {
+        boolean s = (local[id*pad] == 0);
+        local[id*pad] = s ? 1 : 0;
+        if (count.incrementAndGet() < parties) {
+            waitFor(id, () -> sense == s);
+            return;
+        }
+        count.set(0);
+        action.run();
+        releasedAt = System.nanoTime();
+        sense = s;
+        wakeSleepers();
+    }
+
+    SenseBarrier(int P, Coordinator C, Action A) {
+        super(P, C, A);
+        local = new long[P*pad];
+    }
+}
+
+class TreeBarrier extends Barrier {
+    private static final int radix = 4;
+
+    private static final class Node {
+        final AtomicInteger count = new AtomicInteger();
+        final int size;       // arrivals that complete this node
+        final Node parent;    // null at the root
+
+        Node(int s, Node p) {
+            size = s;
+            parent = p;
+        }
+    }
+
+    private final Node leaf[];       // [id / radix]
+    private volatile boolean sense = false;
+    private final long local[];   // [id*pad]: 1 if thread id last waited for true
+
+    public void await(int id) throws Coordinator.KilledException {
+        boolean s = (local[id*pad] == 0);
+        local[id*pad] = s ? 1 : 0;
+        for (Node n = leaf[id / radix]; n != null; n = n.parent) {
+            if (n.count.incrementAndGet() < n.size) {
+                waitFor(id, () -> sense == s);
+                return;
+            }
+            n.count.set(0);   // last here: no one else arrives until we open
+        }
+        action.run();
+        releasedAt = System.nanoTime();
+        sense = s;
+        wakeSleepers();
+    }
+
+    // Build the tree from the top down: the nodes of a level are the
+    // parents of the next level, whose n nodes (or threads, at the
+    // bottom) they take radix at a time.
+    //
+    private static Node[] level(int n, Node parents[]) {
+        Node nodes[] = new Node[(n + radix - 1) / radix];
+        for (int k = 0; k < nodes.length; k++) {
+            nodes[k] = new Node(Math.min(radix, n - k*radix),
+                                (parents == null) ? null : parents[k / radix]);
+        }
+        return nodes;
+    }
+
+    TreeBarrier(int P, Coordinator C, Action A) {
+        super(P, C, A);
+        local = new long[P*pad];
+        int sizes[] = new int[32];   // nodes per level, from the bottom
+        int levels = 0;
+        for (int n = P; levels == 0 || n > 1; n = (n + radix - 1) / radix) {
+            sizes[levels++] = n;
+        }
+        Node nodes[] = null;
+        for (int l = levels-1; l >= 0; l--) {
+            nodes = level(sizes[l], nodes);
+        }
+        leaf = nodes;
+    }
+}
+
+class PhaserBarrier extends Barrier {
+    private final Phaser phaser;
+    private volatile boolean killed = false;   // in the last action
+
+    public void await(int id) throws Coordinator.KilledException {
+        int phase = phaser.arrive();   // the last to arrive runs onAdvance
+        if (phaser.getPhase() == phase) {
+            while (true) {
+                try {
+                    phaser.awaitAdvanceInterruptibly(phase, parkNanos, TimeUnit.NANOSECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    c.poll();
+                } catch (InterruptedException e) { }
+            }
+            woke(id);
+        }
+        if (killed) {
+            c.poll();   // the Coordinator is stopping everyone
+        }
+    }
+
+    PhaserBarrier(int P, Coordinator C, Action A) {
+        super(P, C, A);
+        phaser = new Phaser(P) {
+            protected boolean onAdvance(int phase, int registered) {
+                try {
+                    action.run();
+                } catch (Coordinator.KilledException e) {
+                    killed = true;
+                }
+                releasedAt = System.nanoTime();
+                return false;   // never terminate
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+/*
+    BarrierBench.java
+
+    Measures each kind of Barrier on its own, with threads that do no
+    work between one generation and the next.  Usage:
+
+        java BarrierBench [threads [generations]]
+
+    For each barrier, reports the time per generation (one trip of every
+    thread through the barrier, the action included) and the average
+    time from the barrier opening to a waiting thread running again.
+ */
+
+class BarrierBench {
+    private static final int warmup = 2000;   // untimed generations, for the JIT
+
+    private static long generations;   // completed by the current barrier's action
+
+    private static void run(String kind, int threads, int count) throws InterruptedException {
+        Coordinator c = new Coordinator(0);
+        generations = 0;
+        Barrier b = Barrier.create(kind, threads, c, () -> generations++);
+        Thread ts[] = new Thread[threads];
+        long start[] = new long[1];
+        for (int id = 0; id < threads; id++) {
+            final int me = id;
+            ts[id] = new Thread(() -> {
+                try {
+                    for (int g = 0; g < warmup + count; g++) {
+                        if (g == warmup && me == 0) {
+                            start[0] = System.nanoTime();
+                        }
+                        b.await(me);
+                    }
+                } catch (Coordinator.KilledException e) { }
+            });
+            ts[id].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        long nanos = System.nanoTime() - start[0];
+        System.out.printf("%-8s %10.0f ns/generation %10.0f ns wake-up (%d generations)\n",
+                          kind, (double) nanos / count, b.getLatency(), generations);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0])
+                                        : Runtime.getRuntime().availableProcessors();
+        int count = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+        System.out.printf("%d threads\n", threads);
+        for (String kind : Barrier.kinds) {
+            run(kind, threads, count);
+        }
+    }
+}
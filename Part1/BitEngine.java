@@ -0,0 +1,203 @@
+/*
+    BitEngine.java
+
+    Bit-packed board: 64 cells per long, with a whole word of the next
+    generation computed at once by a small network of bitwise adders.
+    Compared to ArrayEngine this moves 1/32 of the memory per cell and
+    replaces 64 neighbour sums and switches with a couple dozen logical
+    operations.
+ */
+
+// Row i of the board occupies words [i*words, (i+1)*words) of B; cell
+// (i, j) is bit (j & 63) of word j >>> 6 in that row.  Bits past the
+// last column of a row are always zero.
+//
+// Conway's rule is written out as a few logical operations on the
+// neighbour count; any other Rule is applied with Rule.nextBits.
+//
+// For Dataflow, the two boards can also be addressed by number (0 for
+// B, 1 for A) rather than swapped, so that different rows can be at
+// different generations.  swap must not be called once that has begun.
+//
+class BitEngine implements LifeEngine {
+    private long B[];  // board contents
+    private long A[];  // scratch board
+    private long T[];  // temporary pointer
+
+    private final Coordinator c;
+    private final int rows;       // number of cells down the board
+    private final int cols;       // number of cells across the board
+    private final int words;      // longs per row
+    private final int lastBits;   // cells held by the last word of a row
+    private final long lastMask;  // valid bits of the last word of a row
+    private final Rule rule;
+
+    public int get(int i, int j) {
+        return (int) (B[i*words + (j >>> 6)] >>> j) & 1;
+    }
+
+    public void set(int i, int j, int v) {
+        int k = i*words + (j >>> 6);
+        if (v != 0) {
+            B[k] |= 1L << j;
+        } else {
+            B[k] &= ~(1L << j);
+        }
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(B, 0L);
+    }
+
+    public long population() {
+        long n = 0;
+        for (long w : B) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    // Word w of the row starting at index r, shifted so that each bit
+    // holds its western (column - 1) neighbour, wrapping around the torus.
+    //
+    private long west(long[] b, int r, int w) {
+        long carry = (w > 0) ? b[r+w-1] >>> 63
+                             : (b[r+words-1] >>> (lastBits-1)) & 1;
+        return (b[r+w] << 1) | carry;
+    }
+
+    // Same, but each bit holds its eastern (column + 1) neighbour.
+    //
+    private long east(long[] b, int r, int w) {
+        if (w < words-1) {
+            return (b[r+w] >>> 1) | (b[r+w+1] << 63);
+        }
+        return (b[r+w] >>> 1) | ((b[r] & 1) << (lastBits-1));
+    }
+
+    // The next generation of the 64 cells in word x under the given rule,
+    // given the words holding each of their eight neighbours (nw, n, ne, w,
+    // e, sw, s, se).
+    //
+    static long nextWord(Rule rule,
+                         long nw, long n, long ne,
+                         long w,  long x, long e,
+                         long sw, long s, long se) {
+        // Sum the three neighbours above and the three below into
+        // two-bit numbers, and the two beside into another.
+        long t0 = nw ^ n ^ ne;
+        long t1 = (nw & n) | (ne & (nw ^ n));
+        long u0 = sw ^ s ^ se;
+        long u1 = (sw & s) | (se & (sw ^ s));
+        long m0 = w ^ e;
+        long m1 = w & e;
+
+        // Add the three partial sums.  s2:s1:s0 is the neighbour count
+        // mod 8; a count of 8 wraps to 0, which is dead either way.
+        long s0 = t0 ^ u0 ^ m0;
+        long c0 = (t0 & u0) | (m0 & (t0 ^ u0));
+        long p = t1 ^ u1 ^ m1;
+        long q = (t1 & u1) | (m1 & (t1 ^ u1));
+        long s1 = p ^ c0;
+        long s2 = q ^ (p & c0);
+
+        if (rule.isLife()) {
+            // Alive next generation with exactly 3 neighbours, or with 2
+            // if alive now.
+            return s1 & ~s2 & (s0 | x);
+        }
+        // A count of 8 needs a fourth bit: every neighbour is alive.
+        long s3 = t0 & t1 & u0 & u1 & m1;
+        return rule.nextBits(x, s0, s1, s2, s3);
+    }
+
+    public int columnAlign() {
+        return 64;
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        doGeneration(start, end, 0, cols);
+    }
+
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        step(B, A, start, end, left, right);
+    }
+
+    // Compute rows [start, end) of board 1-b from board b.
+    //
+    public void doGeneration(int start, int end, int b)
+            throws Coordinator.KilledException {
+        if (b == 0) {
+            step(B, A, start, end, 0, cols);
+        } else {
+            step(A, B, start, end, 0, cols);
+        }
+    }
+
+    public int get(int i, int j, int b) {
+        long X[] = (b == 0) ? B : A;
+        return (int) (X[i*words + (j >>> 6)] >>> j) & 1;
+    }
+
+    public void set(int i, int j, int v, int b) {
+        long X[] = (b == 0) ? B : A;
+        int k = i*words + (j >>> 6);
+        if (v != 0) {
+            X[k] |= 1L << j;
+        } else {
+            X[k] &= ~(1L << j);
+        }
+    }
+
+    // Kill every cell of both boards.
+    //
+    public void clearBoth() {
+        java.util.Arrays.fill(B, 0L);
+        java.util.Arrays.fill(A, 0L);
+    }
+
+    // Compute a part of to, the next generation of from.
+    //
+    private void step(long from[], long to[], int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        int w1 = (right + 63) >>> 6;
+        for (int i = start; i < end; i++) {
+            int up = ((i+rows-1) % rows) * words;
+            int mid = i * words;
+            int down = ((i+1) % rows) * words;
+            for (int w = left >>> 6; w < w1; w++) {
+                // One word updates up to 64 cells; hesitate once for all of them.
+                c.hesitate();
+
+                long next = nextWord(rule,
+                                     west(from, up, w), from[up+w], east(from, up, w),
+                                     west(from, mid, w), from[mid+w], east(from, mid, w),
+                                     west(from, down, w), from[down+w], east(from, down, w));
+                to[mid+w] = (w == words-1) ? next & lastMask : next;
+            }
+        }
+    }
+
+    public void swap() {
+        T = B;  B = A;  A = T;
+    }
+
+    // Constructor
+    //
+    public BitEngine(int R, int N, Coordinator C) {
+        this(R, N, C, Rule.LIFE);
+    }
+
+    public BitEngine(int R, int N, Coordinator C, Rule L) {
+        rule = L;
+        rows = R;
+        cols = N;
+        c = C;
+        words = (cols + 63) >>> 6;
+        lastBits = cols - (words-1)*64;
+        lastMask = (lastBits == 64) ? -1L : (1L << lastBits) - 1;
+        A = new long[rows*words];  // initialized to all 0
+        B = new long[rows*words];  // initialized to all 0
+    }
+}
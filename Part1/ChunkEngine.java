@@ -0,0 +1,266 @@
+/*
+    ChunkEngine.java
+
+    An unbounded world, in place of the torus the other engines wrap
+    around: patterns can travel and grow without limit, and run into
+    nothing.  The world is kept as square chunks, which are created as
+    live cells approach them and dropped once they and everything around
+    them have died, so memory follows the live region.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Cell (i, j) may be anywhere in the int range, negative included; the
+// LifeBoard shows a rows by cols window onto it.  It lives in the chunk
+// (i >> 6, j >> 6), as bit j & 63 of row i & 63 of that chunk: 64 cells
+// per long, as in BitEngine, whose nextWord computes each row.
+//
+// The chunks in use are listed in work, in a fixed order.  A generation
+// is split among threads by the row ranges they are given: the range
+// [start, end) of the window's rows stands for the same fraction of the
+// list, so ranges that partition the rows also partition the chunks.
+//
+// swap adds an empty chunk next to every chunk that holds a live cell
+// (cells may be born there), and drops every chunk that is empty with
+// nothing alive around it.  It also replaces the table of chunks rather
+// than updating it, so that the display can read cells while the next
+// generation is being computed.
+//
+class ChunkEngine implements LifeEngine {
+    private static final int size = 64;    // cells on a side of a chunk
+    private static final long NONE[] = new long[size];   // rows of a missing chunk
+
+    private static final class Chunk {
+        final int cy, cx;               // position, in chunks
+        long cur[] = new long[size];    // current generation, one long per row
+        long next[] = new long[size];   // next generation
+        final Chunk nb[] = new Chunk[9];
+            // [(dy+1)*3 + dx+1]: neighbours in each direction, null if absent
+        boolean empty = true;           // no live cells, as of the last swap
+
+        Chunk(int y, int x) {
+            cy = y;
+            cx = x;
+        }
+    }
+
+    private volatile HashMap<Long, Chunk> chunks = new HashMap<>();
+    private final ArrayList<Chunk> added = new ArrayList<>();  // chunks not yet in work
+    private Chunk work[] = new Chunk[0];   // chunks computed each generation
+
+    private final Coordinator c;
+    private final int rows;   // rows of the window, which divide up the work
+    private final Rule rule;
+
+    private static long key(int cy, int cx) {
+        return ((long) cy << 32) | (cx & 0xffffffffL);
+    }
+
+    private static long[] rowsOf(Chunk ch) {
+        return (ch == null) ? NONE : ch.cur;
+    }
+
+    // The chunk at (cy, cx) in table t, creating it (and linking it to
+    // its neighbours) if it is missing.
+    //
+    private Chunk chunk(HashMap<Long, Chunk> t, int cy, int cx) {
+        Chunk ch = t.get(key(cy, cx));
+        if (ch == null) {
+            ch = new Chunk(cy, cx);
+            t.put(key(cy, cx), ch);
+            added.add(ch);
+            for (int d = 0; d < 9; d++) {
+                if (d != 4) {
+                    Chunk o = t.get(key(cy + d/3 - 1, cx + d%3 - 1));
+                    if (o != null) {
+                        ch.nb[d] = o;
+                        o.nb[8-d] = ch;
+                    }
+                }
+            }
+        }
+        return ch;
+    }
+
+    // Make sure the chunk at (cy, cx) and all around it exist in t.
+    //
+    private void surround(HashMap<Long, Chunk> t, int cy, int cx) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                chunk(t, cy + dy, cx + dx);
+            }
+        }
+    }
+
+    public int get(int i, int j) {
+        Chunk ch = chunks.get(key(i >> 6, j >> 6));
+        return (ch == null) ? 0 : (int) (ch.cur[i & 63] >>> j) & 1;
+    }
+
+    public void set(int i, int j, int v) {
+        if (v == 0 && chunks.get(key(i >> 6, j >> 6)) == null) {
+            return;
+        }
+        surround(chunks, i >> 6, j >> 6);
+        Chunk ch = chunks.get(key(i >> 6, j >> 6));
+        if (v != 0) {
+            ch.cur[i & 63] |= 1L << j;
+        } else {
+            ch.cur[i & 63] &= ~(1L << j);
+        }
+        listAdded();
+    }
+
+    public void clear() {
+        chunks = new HashMap<>();
+        added.clear();
+        work = new Chunk[0];
+    }
+
+    private void listAdded() {
+        if (!added.isEmpty()) {
+            Chunk w[] = java.util.Arrays.copyOf(work, work.length + added.size());
+            for (int k = 0; k < added.size(); k++) {
+                w[work.length + k] = added.get(k);
+            }
+            work = w;
+            added.clear();
+        }
+    }
+
+    // West and east neighbours of the 64 cells of row word m, given the
+    // same row of the chunks to the west (w) and east (e).
+    //
+    private static long west(long m, long w) {
+        return (m << 1) | (w >>> 63);
+    }
+
+    private static long east(long m, long e) {
+        return (m >>> 1) | (e << 63);
+    }
+
+    private void step(Chunk ch) throws Coordinator.KilledException {
+        long x[] = ch.cur, out[] = ch.next;
+        long n[] = rowsOf(ch.nb[1]), s[] = rowsOf(ch.nb[7]);
+        long w[] = rowsOf(ch.nb[3]), e[] = rowsOf(ch.nb[5]);
+        long nw[] = rowsOf(ch.nb[0]), ne[] = rowsOf(ch.nb[2]);
+        long sw[] = rowsOf(ch.nb[6]), se[] = rowsOf(ch.nb[8]);
+        for (int r = 0; r < size; r++) {
+            // One word updates 64 cells; hesitate once for all of them.
+            c.hesitate();
+
+            long up, upW, upE, dn, dnW, dnE;
+            if (r > 0) {
+                up = x[r-1];  upW = w[r-1];  upE = e[r-1];
+            } else {
+                up = n[size-1];  upW = nw[size-1];  upE = ne[size-1];
+            }
+            if (r < size-1) {
+                dn = x[r+1];  dnW = w[r+1];  dnE = e[r+1];
+            } else {
+                dn = s[0];  dnW = sw[0];  dnE = se[0];
+            }
+            out[r] = BitEngine.nextWord(rule,
+                    west(up, upW), up, east(up, upE),
+                    west(x[r], w[r]), x[r], east(x[r], e[r]),
+                    west(dn, dnW), dn, east(dn, dnE));
+        }
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        Chunk w[] = work;
+        int from = (int) ((long) start * w.length / rows);
+        int to = (int) ((long) end * w.length / rows);
+        for (int k = from; k < to; k++) {
+            step(w[k]);
+        }
+    }
+
+    public void swap() {
+        List<Chunk> live = new ArrayList<>();
+        for (Chunk ch : work) {
+            long t[] = ch.cur;  ch.cur = ch.next;  ch.next = t;
+            ch.empty = true;
+            for (long w : ch.cur) {
+                if (w != 0) {
+                    ch.empty = false;
+                    live.add(ch);
+                    break;
+                }
+            }
+        }
+
+        // Grow: room for births next to every live chunk.  Changes go to a
+        // copy of the table, so that the display never sees one half made.
+        HashMap<Long, Chunk> t = new HashMap<>(chunks);
+        for (Chunk ch : live) {
+            surround(t, ch.cy, ch.cx);
+        }
+        listAdded();
+
+        // Shrink: drop empty chunks with no live neighbours.
+        ArrayList<Chunk> keep = new ArrayList<>(work.length);
+        for (Chunk ch : work) {
+            if (isLonelyAndEmpty(ch)) {
+                t.remove(key(ch.cy, ch.cx));
+                for (int d = 0; d < 9; d++) {
+                    if (ch.nb[d] != null) {
+                        ch.nb[d].nb[8-d] = null;
+                    }
+                }
+            } else {
+                keep.add(ch);
+            }
+        }
+        work = keep.toArray(new Chunk[0]);
+        chunks = t;
+    }
+
+    private static boolean isLonelyAndEmpty(Chunk ch) {
+        for (int d = 0; d < 9; d++) {
+            Chunk o = (d == 4) ? ch : ch.nb[d];
+            if (o != null && !o.empty) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The live cells, anywhere in the world, as {x, y} pairs (x across,
+    // y down, as in LifeBoard.getPoints).
+    //
+    public int[][] getCells() {
+        List<int[]> points = new ArrayList<>();
+        for (Chunk ch : chunks.values()) {
+            for (int r = 0; r < size; r++) {
+                long row = ch.cur[r];
+                while (row != 0) {
+                    int b = Long.numberOfTrailingZeros(row);
+                    points.add(new int[] {ch.cx*size + b, ch.cy*size + r});
+                    row &= row - 1;
+                }
+            }
+        }
+        return points.toArray(new int[0][]);
+    }
+
+    // Number of chunks in use, for a sense of how much memory the world
+    // takes.
+    //
+    public int getChunks() {
+        return work.length;
+    }
+
+    // Constructor
+    //
+    public ChunkEngine(int R, int N, Coordinator C, Rule L) {
+        if (L.bornFromNothing() || L.states() > 2) {
+            throw new IllegalArgumentException("ChunkEngine cannot run " + L);
+        }
+        rows = R;
+        c = C;
+        rule = L;
+    }
+}
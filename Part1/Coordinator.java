@@ -9,119 +9,251 @@
     originally written in 2002.
  */
 
+//import javax.swing.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 // The Coordinator serves to slow down execution, so that behavior is
 // visible on the screen, and to notify all running threads when the user
-// wants them to die.  DO NOT MODIFY THIS CLASS.
+// wants them to die.
+//
+// hesitate() is called for every cell, so all it does is read one
+// volatile flag, to see whether the threads have been told to die.  Pause,
+// resume, step and stop are instead commands, which the UI posts to a
+// lock-free queue and never waits for: the one thread that updates the
+// board applies them in pace, once a generation, so the game only ever
+// pauses or stops between generations, with the last of them on display.
+// stop still kills the threads at once, and parks until the last
+// registered thread unregisters, for the UI to call before it touches
+// the board.
+//
+// The delay that makes the game watchable is no longer spun out cell by
+// cell in hesitate(), which burned a core per thread and had to be
+// calibrated against a clock speed that turbo and frequency scaling keep
+// changing.  Instead the thread that updates the board calls pace once a
+// generation, and waits there, parked until shortly before the deadline,
+// for the generation's time to be up; the other threads wait for it at
+// their barrier (or for their neighbours, in dataflow mode), mostly
+// parked as well, and while the game is paused.  A command posted
+// meanwhile unparks it.
 //
-//import javax.swing.*;
-
 class Coordinator {
-    private boolean open = true;
-        // set to false temporarily when threads are supposed to die.
-    private boolean running = true;
-        // set to false when threads are supposed to pause.
-    private int numThreads = 0;
+    // Commands for post.
+    public static final int PAUSE = 0;
+    public static final int RESUME = 1;
+    public static final int STEP = 2;       // run n generations, then pause
+    public static final int STOP = 3;
+
+    private static class Command {
+        final int kind;
+        final int n;
+        final long posted = System.nanoTime();
+
+        Command(int K, int N) {
+            kind = K;
+            n = N;
+        }
+    }
+
+    private volatile boolean killed = false;    // threads are supposed to die
+    private volatile boolean paused = false;
+    private int steps = 0;
+        // generations left before pausing, if more than 0
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private volatile long latency = 0;
+        // from posting the last command applied to applying it
+    private final AtomicLong posted = new AtomicLong(0);
+    private volatile long applied = 0;
+        // numbers of commands posted and applied
+    private volatile boolean parked = false;
+        // pacer is waiting in pace for the game to be resumed
+    private final AtomicInteger numThreads = new AtomicInteger(0);
         // number of active worker threads.  Maintained by register and
         // unregister methods.
-    private int pauseIterations = 0;
+    private volatile Thread pacer = null;
+        // thread that last called pace, to be woken by post and stop
+    private volatile Thread stopper = null;
+        // thread in stop, waiting for numThreads to reach zero
+    private final long frameNanos;
+        // time per generation; 0 to run as fast as possible
+    private long due = 0;
+        // System.nanoTime() at which the last generation was due
+    private static final long spinNanos = 50000;
+        // wait the last of a frame by spinning, as a park may overshoot
+    private static final long maxPark = 10000000;
+        // longest park, after which pace checks for commands again
 
     // A thread terminates early by throwing itself a KilledException.
     //
     public class KilledException extends Throwable {private static final long serialVersionUID = 1L;}
 
-    public synchronized void register() {
-        numThreads++;
+    public void register() {
+        numThreads.incrementAndGet();
+    }
+
+    public void unregister() {
+        if (numThreads.decrementAndGet() == 0) {
+            Thread t = stopper;
+            if (t != null) {
+                LockSupport.unpark(t);
+                    // so stop knows to inspect numThreads again
+            }
+        }
+    }
+
+    // Whether the game is paused, at the end of a generation.
+    //
+    public boolean isPaused() {
+        return paused;
+    }
+
+    // Whether the thread that updates the board is parked in pace while
+    // the game is paused, with every command posted so far applied.  It
+    // then touches neither the board nor the display until the next
+    // command is posted, so until then the thread that posts commands may
+    // redraw the board itself.
+    //
+    public boolean isParked() {
+        return parked && applied == posted.get();
     }
 
-    public synchronized void unregister() {
-        numThreads--;
-        notifyAll();
-            // so event thread knows to inspect numThreads again
+    // Nanoseconds from posting the last command applied to its being
+    // applied.
+    //
+    public long getLatency() {
+        return latency;
     }
 
-    // Pause or die if so instructed.
+    // Die if so instructed, but without waiting or pausing: for a thread
+    // that is waiting for other threads rather than updating cells.
     //
-    private synchronized void gate()
-            throws KilledException {
-        if (!open) {
+    public void poll() throws KilledException {
+        if (killed) {
             throw new KilledException();
         }
-        while (!running) {
-            try {
-                wait();
-            } catch(InterruptedException e) {};
-            if (!open) {
-                throw new KilledException();
-            }
-        }
     }
 
-    // Wait a bit before proceeding through gate.
+    // Die if so instructed, before updating a cell, or a run of cells at
+    // once.
     //
     public void hesitate() throws KilledException {
-        spin(pauseIterations);
-        gate();
+        poll();
     }
 
-    // Toggle running.  Resume paused threads if appropriate.
+    // Ask the thread that updates the board to pause, resume, stop, or
+    // run n generations and then pause, at the end of the generation it
+    // is on.  Returns at once.
     //
-    public synchronized void toggle() {
-        running = !running;
-        if (running) {
-            notifyAll();
+    public void post(int kind, int n) {
+        posted.incrementAndGet();
+        commands.add(new Command(kind, n));
+        Thread t = pacer;
+        if (t != null) {
+            LockSupport.unpark(t);
         }
     }
 
-    // Spin for specified number of iterations.
-    //
-    private void spin(long iters) {
-        do {
-        } while (--iters > 0);
+    public void post(int kind) {
+        post(kind, 0);
     }
 
-    // Kill all threads using the coordinator.
+    // Apply the commands posted since last time, in order.
     //
-    public synchronized void stop() {
-        running = false;
-        open = false;
-        // System.out.println(Color_Code.wrap("[DEBUG] updateBoard: "+SwingUtilities.isEventDispatchThread(),225));
-
-        notifyAll();
-        while (numThreads > 0) {
-            try {
-                wait();
-            } catch(InterruptedException e) {};
+    private void apply() throws KilledException {
+        for (Command k = commands.poll(); k != null; k = commands.poll()) {
+            latency = System.nanoTime() - k.posted;
+            applied++;
+            switch (k.kind) {
+            case PAUSE:
+                paused = true;
+                steps = 0;
+                break;
+            case RESUME:
+                paused = false;
+                steps = 0;
+                break;
+            case STEP:
+                paused = false;
+                steps = k.n;
+                break;
+            case STOP:
+                killed = true;
+                break;
+            }
         }
-        open = true;
-        running = true;
+        poll();
     }
 
-    // If positive, count is number of iterations of empty loop to wait
-    // in hesitate().  If negative, it's the approximate number of nanoseconds,
-    // which we turn into iterations via a brief calibration exercise.
-    public Coordinator(int count) {
-        if (count > 0) {
-            pauseIterations = count;
-        } else {
-            count = -count;
-            long nanos = Integer.MAX_VALUE;
-            final int oneMillion = 100000;
-            // run multiple trials in case I get preempted during one or more
-            for (int i = 0; i < 10; i++) {
-                long start = System.nanoTime();
-                spin(oneMillion);
-                long trial = System.nanoTime() - start;
-                if (trial < nanos) {
-                    nanos = trial;
+    // Called by the one thread that updates the board, each time it does:
+    // wait until the given number of generations' time is up since the
+    // last update, applying any commands that arrive meanwhile, and then
+    // for as long as the game is paused.  A board that has fallen more
+    // than a frame behind (it was paused, say, or cannot keep up) starts
+    // afresh from now rather than racing to catch up.
+    //
+    public void pace(int generations) throws KilledException {
+        pacer = Thread.currentThread();
+        if (steps > 0) {
+            steps -= generations;
+            if (steps <= 0) {
+                steps = 0;
+                paused = true;
+            }
+        }
+        apply();
+        if (frameNanos > 0 && !paused) {
+            long now = System.nanoTime();
+            long next = due + frameNanos * generations;
+            if (next - now < -frameNanos) {
+                next = now;
+            }
+            for (long left = next - now; left > 0 && !paused; left = next - System.nanoTime()) {
+                if (left > spinNanos) {
+                    LockSupport.parkNanos(this, Math.min(left - spinNanos, maxPark));
+                    apply();
+                } else {
+                    Thread.onSpinWait();
                 }
             }
-            // Now nanos is a good estimate of the number of nanoseconds
-            // consumed by spin(oneMillion).
-            // Compute the spin argument that would result in a delay of
-            // approximately count nanoseconds.
-            // NB: oneMillion/nanos = pauseIterations/count
-            pauseIterations = (int) ((double)oneMillion / (double)nanos * (double)count);
-            System.err.printf("running %d spin iterations per dot\n", pauseIterations);
+            due = next;
+        }
+        while (paused) {
+            parked = true;
+            LockSupport.park(this);
+            parked = false;
+            apply();
+        }
+    }
+
+    // Kill all threads using the coordinator, at once, and wait for them
+    // to finish; also for a run already told to STOP.  Commands not yet
+    // applied are dropped.
+    //
+    public synchronized void stop() {
+        stopper = Thread.currentThread();
+        killed = true;
+        Thread t = pacer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        while (numThreads.get() > 0) {
+            LockSupport.park(this);
         }
+        stopper = null;
+        pacer = null;
+        commands.clear();
+        applied = posted.get();
+        paused = false;
+        steps = 0;
+        killed = false;
+    }
+
+    // Pace the game at frame nanoseconds per generation, or not at all if
+    // frame is 0.
+    public Coordinator(long frame) {
+        frameNanos = frame;
     }
 }
@@ -0,0 +1,77 @@
+/*
+    Crew.java
+
+    The threads that run Part1's Workers: started once, with the UI, and
+    kept from Run to Run until Quit.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Each Run used to start a new Thread for each Worker, and let it die at
+// Stop.  Instead there is one thread for each Worker id, which parks
+// between runs until it is handed its Worker for the next one, so a Run
+// costs an unpark per thread rather than a thread creation.
+//
+class Crew {
+    private final Thread threads[];
+    private final AtomicReferenceArray<Runnable> jobs;   // [i]: next for thread i
+    private volatile boolean closed = false;
+
+    public int size() {
+        return threads.length;
+    }
+
+    // Have thread i run job, once it has finished the last one it was
+    // given.
+    //
+    public void run(int i, Runnable job) {
+        jobs.set(i, job);
+        LockSupport.unpark(threads[i]);
+    }
+
+    private void loop(int i) {
+        while (!closed) {
+            Runnable job = jobs.getAndSet(i, null);
+            if (job != null) {
+                try {
+                    job.run();
+                } catch (Throwable e) {
+                    // Report it as an uncaught exception would be, but
+                    // keep the thread for the next Run.
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                }
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    // Let the threads finish what they are running, and end.  Waits up to
+    // millis milliseconds for each.
+    //
+    public void shutdown(long millis) {
+        closed = true;
+        for (Thread t : threads) {
+            LockSupport.unpark(t);
+        }
+        try {
+            for (Thread t : threads) {
+                t.join(millis);
+            }
+        } catch (InterruptedException e) {}
+    }
+
+    // Constructor.  Starts N threads.
+    //
+    public Crew(int N) {
+        threads = new Thread[N];
+        jobs = new AtomicReferenceArray<>(N);
+        for (int i = 0; i < N; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> loop(id), "Life worker " + i);
+            threads[i].start();
+        }
+    }
+}
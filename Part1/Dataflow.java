@@ -0,0 +1,222 @@
+/*
+    Dataflow.java
+
+    Runs the board without a barrier at the end of each generation: the
+    board is cut into stripes of rows, and each stripe moves on to its
+    next generation as soon as the two stripes next to it have caught up,
+    whatever the rest of the board is doing.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Generation g+1 of a stripe depends only on generation g of the stripe
+// and of the row on either side of it.  A BitEngine keeps two boards, so
+// generation g of every row lives in board (g - base) % 2, and stripe p
+// may compute generation g+1 once done[p] = g and both its neighbours
+// have done[] >= g: their rows at g are then complete, and they have
+// finished reading the rows at g-1 that the new generation overwrites.
+// Neighbours can therefore be one generation apart, and stripes further
+// apart more than that, so a slow stripe holds up only those near it.
+//
+// There are two ways to drive it.  In Part1, each thread owns a stripe
+// and calls run, which waits (spinning, yielding, then parking) for the
+// neighbours and unparks them after each generation.  In Part2, start
+// submits a task for each stripe that is ready, and each task, when it
+// finishes, submits the next generation of its stripe and of its
+// neighbours, if they have become ready.
+//
+// done[] is the only state the threads share; its slots are `pad' apart
+// so that stripes on different threads do not share a cache line.
+//
+class Dataflow {
+    // Called after each generation of stripe 0, which the display follows.
+    //
+    interface Listener {
+        void advanced() throws Coordinator.KilledException;
+    }
+
+    private static final int pad = 8;          // longs per cache line
+    private static final int spins = 100;      // before yielding
+    private static final int yields = 10;      // before parking
+    private static final long parkNanos = 1000000;
+
+    private final BitEngine engine;
+    private final Coordinator c;
+    private final int parts;
+    private final int first[];      // [p]: first row of stripe p; [parts] = rows
+    private final int stripe[];     // [i]: stripe of row i
+    private final long base;        // generation held in board 0
+    private final AtomicLongArray done;              // [p*pad]: generation of stripe p
+    private final AtomicIntegerArray queued;         // [p*pad]: 1 while a task is out (Part2)
+    private final AtomicReferenceArray<Thread> parked;   // [p]: waiting to run p (Part1)
+
+    private long gen(int p) {
+        return done.get(p*pad);
+    }
+
+    private int board(long g) {
+        return (int) ((g - base) & 1);
+    }
+
+    public int getParts() {
+        return parts;
+    }
+
+    // Generation of the part of the board furthest behind.
+    //
+    public long getGeneration() {
+        long g = Long.MAX_VALUE;
+        for (int p = 0; p < parts; p++) {
+            g = Math.min(g, gen(p));
+        }
+        return g;
+    }
+
+    // Cell (i, j), at whatever generation its stripe has reached.
+    //
+    public int get(int i, int j) {
+        return engine.get(i, j, board(gen(stripe[i])));
+    }
+
+    // Only safe while no stripe is being computed.
+    //
+    public void set(int i, int j, int v) {
+        engine.set(i, j, v, board(gen(stripe[i])));
+    }
+
+    // Only safe while no stripe is being computed.  Every stripe is left
+    // at the generation of the one furthest ahead; as the board is empty
+    // it does not matter which.
+    //
+    public void clear() {
+        engine.clearBoth();
+        long g = 0;
+        for (int p = 0; p < parts; p++) {
+            g = Math.max(g, gen(p));
+        }
+        for (int p = 0; p < parts; p++) {
+            done.set(p*pad, g);
+        }
+    }
+
+    private boolean ready(int p) {
+        long g = gen(p);
+        return gen((p + parts - 1) % parts) >= g && gen((p + 1) % parts) >= g;
+    }
+
+    // Compute the next generation of stripe p, which must be ready.
+    //
+    private void step(int p, Listener l) throws Coordinator.KilledException {
+        long g = gen(p);
+        engine.doGeneration(first[p], first[p+1], board(g));
+        done.set(p*pad, g + 1);
+        if (p == 0) {
+            l.advanced();
+        }
+    }
+
+    // Part1: compute stripe p, generation after generation, on this
+    // thread, until the Coordinator stops it.
+    //
+    public void run(int p, Listener l) throws Coordinator.KilledException {
+        while (true) {
+            for (int k = 0; !ready(p); k++) {
+                if (k < spins) {
+                    Thread.onSpinWait();
+                } else if (k < spins + yields) {
+                    Thread.yield();
+                    c.poll();
+                } else {
+                    parked.set(p, Thread.currentThread());
+                    if (!ready(p)) {
+                        LockSupport.parkNanos(this, parkNanos);
+                    }
+                    parked.set(p, null);
+                    c.poll();
+                }
+            }
+            step(p, l);
+            wake((p + parts - 1) % parts);
+            wake((p + 1) % parts);
+        }
+    }
+
+    private void wake(int p) {
+        Thread t = parked.get(p);
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    // Part2: submit a task to pool for every stripe that is ready.  The
+    // tasks then keep submitting each other until the Coordinator stops
+    // them.  Each task is registered with the Coordinator from when it is
+    // submitted, so that stop waits for those that have not started yet.
+    //
+    public void start(Executor pool, Listener l) {
+        for (int p = 0; p < parts; p++) {
+            queued.set(p*pad, 0);
+        }
+        for (int p = 0; p < parts; p++) {
+            submit(p, pool, l);
+        }
+    }
+
+    private void submit(int p, Executor pool, Listener l) {
+        // Claim the stripe first, then check: a stripe that was claimed
+        // and found not ready is released, and checked once more in case
+        // a neighbour finished in between and saw it claimed.
+        while (queued.compareAndSet(p*pad, 0, 1)) {
+            if (ready(p)) {
+                c.register();
+                pool.execute(() -> {
+                    try {
+                        step(p, l);
+                        queued.set(p*pad, 0);
+                        submit((p + parts - 1) % parts, pool, l);
+                        submit(p, pool, l);
+                        submit((p + 1) % parts, pool, l);
+                    } catch (Coordinator.KilledException e) {
+                    } finally {
+                        c.unregister();
+                    }
+                });
+                return;
+            }
+            queued.set(p*pad, 0);
+            if (!ready(p)) {
+                return;
+            }
+        }
+    }
+
+    // Constructor.  The board starts out in board 0 of E, at generation G,
+    // and is cut into P stripes (fewer if there are not that many rows).
+    //
+    public Dataflow(BitEngine E, Coordinator C, int rows, int P, long G) {
+        engine = E;
+        c = C;
+        parts = Math.max(1, Math.min(P, rows));
+        base = G;
+        first = new int[parts + 1];
+        stripe = new int[rows];
+        for (int p = 0; p <= parts; p++) {
+            first[p] = (int) ((long) rows * p / parts);
+        }
+        for (int p = 0; p < parts; p++) {
+            for (int i = first[p]; i < first[p+1]; i++) {
+                stripe[i] = p;
+            }
+        }
+        done = new AtomicLongArray(parts*pad);
+        for (int p = 0; p < parts; p++) {
+            done.set(p*pad, G);
+        }
+        queued = new AtomicIntegerArray(parts*pad);
+        parked = new AtomicReferenceArray<>(parts);
+    }
+}
@@ -0,0 +1,11 @@
+/*
+    EngineFactory.java
+
+    Builds the engine for a board once its size and Coordinator are
+    known.  Life picks one from the command line and the LifeBoard calls
+    it.
+ */
+
+interface EngineFactory {
+    LifeEngine create(int rows, int cols, Coordinator c);
+}
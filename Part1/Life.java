@@ -25,22 +25,38 @@ public class Life {
 	public static volatile long start_time;
 	public static volatile long end_time;
 
-    private static final int n = 100;    // number of cells on a side
-    private static int pauseIterations = -(500000000/n/n);
-        // nanoseconds per dot for a delay of about a half a second
+    private static final int defaultSize = 100; // cells on a side unless -n/-w/-h given
+    private static final long defaultFrame = 500000000;   // ns: half a second
+    private static int rows = defaultSize;      // board height
+    private static int cols = defaultSize;      // board width
+    private static long frameNanos = -1;
+        // time per generation (-f), 0 for as fast as possible; -1 until
+        // set, for the default of half a second
+    private static int legacySpin = 0;           // -s or s:, per cell, if given
     public static long numThreads = 1;
 
     private static boolean headless = false;    // don't create GUI
     private static boolean glider = false;      // create initial glider
+    private static Rule rule = null;            // set by --rule or rule:, else Conway's
+    private static int depth = 1;               // generations per pass (--depth)
+    private static EngineFactory engine = (R, N, C) -> new ArrayEngine(R, N, C, rule, depth);
+        // board storage
+    private static String engineOption = null;  // option that chose the engine, if any
+    private static boolean dataflow = false;    // no barrier between generations (--dataflow)
+    private static String mapFile = null;       // backing file for --offheap
+    private static long target = 0;             // generation to fast-forward to (-g)
+    private static final int maxDepth = 32;     // beyond which the halo costs more than it saves
+    private static final int hashLifeNodes = 1 << 20;
+        // HashLife node table size at which it discards its memoized results
     private static List<Point> shape = null;	// used to represent a custom shape specified by the user in a config file.
 
     private static UI u; // store the UI in Life
 
-    public static volatile int counter = 0; // Thread counter
+    private static String barrier = "sense";   // kind of Barrier (--barrier)
 
     // Helper method to create the UI. 
     private void buildUI(RootPaneContainer pane, List<Point> shape) {
-        u = new UI(n, pane, pauseIterations, headless, glider, numThreads, shape);
+        u = new UI(rows, cols, pane, frameNanos, headless, glider, engine, numThreads, shape);
     }
 
     // List of worker threads.
@@ -53,6 +69,80 @@ public class Life {
         System.exit(-1);
     }
 
+    // EngineFactory for --offheap and --map.
+    //
+    private static LifeEngine offHeapEngine(int rows, int cols, Coordinator c) {
+        try {
+            return new OffHeapEngine(rows, cols, c, rule, mapFile);
+        } catch (java.io.IOException e) {
+            die(String.format("Cannot map board: %s\n", e.getMessage()));
+            return null;
+        }
+    }
+
+    // EngineFactory for --vector.  Falls back to the ordinary loop if the
+    // vector kernel is not available.
+    //
+    private static LifeEngine vectorEngine(int rows, int cols, Coordinator c) {
+        RowKernel k = RowKernel.vector(rule);
+        if (k == null) {
+            System.err.print("Vector API not available; using the scalar loop\n");
+        }
+        return new ArrayEngine(rows, cols, c, rule, k);
+    }
+
+    // True if the board is run by a Dataflow, with no barrier between
+    // generations.
+    //
+    public static boolean isDataflow() {
+        return dataflow;
+    }
+
+    // The rule the board runs.
+    //
+    public static Rule getRule() {
+        return rule;
+    }
+
+    // Fast-forward the initial board to generation target with HashLife.
+    // A headless run just reports the population there and exits;
+    // otherwise the result is loaded into the board for display, and Run
+    // carries on from it.  HashLife works on an unbounded plane, so the
+    // result differs from stepping the board itself once the pattern
+    // wraps around the edges (unless the board is --unbounded too).
+    //
+    private static void fastForward(LifeBoard lb) {
+        HashLife h = new HashLife(lb.getCells(), hashLifeNodes, rule);
+        h.advanceTo(target);
+        if (headless) {
+            System.out.printf("generation %d: population %d\n",
+                              h.getGeneration(), h.getPopulation());
+            System.exit(0);
+        }
+        if ("--unbounded".equals(engineOption)) {
+            int cells[][] = h.toCells();
+            if (cells.length < h.getPopulation()) {
+                System.err.printf("%d cells are out of range, and left out\n",
+                                  h.getPopulation() - cells.length);
+            }
+            lb.load(cells, h.getGeneration());
+        } else {
+            lb.load(h.toCells(lb.getRows(), lb.getCols()), h.getGeneration());
+        }
+    }
+
+    // A frame time in milliseconds, as nanoseconds; -1 if it is not one.
+    //
+    static long parseFrame(String s) {
+        try {
+            double ms = Double.parseDouble(s.trim());
+            if (ms >= 0 && ms < Long.MAX_VALUE / 1e6) {
+                return (long) (ms * 1e6);
+            }
+        } catch (NumberFormatException e) { }
+        return -1;
+    }
+
     // Examine command-line arguments for non-default parameters.
     //
     private static void parseArgs(String[] args) {
@@ -72,12 +162,24 @@ public class Life {
 		       if (config.numThreads != -1 && numThreads == 1) {
                            numThreads = config.numThreads;
 		       } 
-		       if (config.spin != -1 && pauseIterations == -(500000000/n/n)) {
-		           pauseIterations = config.spin;
+		       if (config.frame != -1 && frameNanos == -1 && legacySpin == 0) {
+		           frameNanos = config.frame;
+		       } 
+		       if (config.spin != -1 && frameNanos == -1 && legacySpin == 0) {
+		           legacySpin = config.spin;
+		       }
+		       if (config.width != -1 && cols == defaultSize) {
+		           cols = config.width;
+		       }
+		       if (config.height != -1 && rows == defaultSize) {
+		           rows = config.height;
 		       }
 		       if (config.shape != null && !glider) {
 		           shape = config.shape;
 		       }
+		       if (config.rule != null && rule == null) {
+		           rule = config.rule;
+		       }
 		   } else { System.err.println("Could not configure from file. Using default values instead.");}
 	       }
 	    } else if (args[i].equals("-t")) {
@@ -95,7 +197,21 @@ public class Life {
                                           args[i]));
                     }
                 }
+            } else if (args[i].equals("-f")) {
+                if (++i >= args.length) {
+                    die("Missing frame time\n");
+                } else {
+                    long fn = parseFrame(args[i]);
+                    if (fn >= 0) {
+                        frameNanos = fn;
+                    } else {
+                        die(String.format("Invalid frame time: %s\n",
+                                          args[i]));
+                    }
+                }
             } else if (args[i].equals("-s")) {
+                // Legacy: spin iterations per cell, now taken as about
+                // a nanosecond each, and turned into a frame time below.
                 if (++i >= args.length) {
                     die("Missing number of spin iterations\n");
                 } else {
@@ -104,41 +220,204 @@ public class Life {
                         di = Integer.parseInt(args[i]);
                     } catch (NumberFormatException e) { }
                     if (di > 0) {
-                        pauseIterations = di;
+                        legacySpin = di;
+                        frameNanos = -1;
                     } else {
                         die(String.format("Invalid number of spin iterations: %s\n",
                                           args[i]));
                     }
                 }
+            } else if (args[i].equals("-n") || args[i].equals("-w")
+                       || args[i].equals("-h")) {
+                // -n sets both dimensions of a square board, -w and -h
+                // one each for a rectangular one.
+                String opt = args[i];
+                if (++i >= args.length) {
+                    die("Missing board size\n");
+                } else {
+                    int sz = -1;
+                    try {
+                        sz = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (sz > 0) {
+                        if (!opt.equals("-h")) {
+                            cols = sz;
+                        }
+                        if (!opt.equals("-w")) {
+                            rows = sz;
+                        }
+                    } else {
+                        die(String.format("Invalid board size: %s\n",
+                                          args[i]));
+                    }
+                }
+            } else if (args[i].equals("-g")) {
+                if (++i >= args.length) {
+                    die("Missing target generation\n");
+                } else {
+                    long g = -1;
+                    try {
+                        g = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (g > 0) {
+                        target = g;
+                    } else {
+                        die(String.format("Invalid target generation: %s\n",
+                                          args[i]));
+                    }
+                }
             } else if (args[i].equals("--headless")) {
                 headless = true;
             } else if (args[i].equals("--glider")) {
                 glider = true;
+            } else if (args[i].equals("--sparse")) {
+                engine = (R, N, C) -> new SparseEngine(R, N, C, rule);
+                engineOption = args[i];
+            } else if (args[i].equals("--packed")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new BitEngine(R, N, C, rule);
+            } else if (args[i].equals("--table")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ArrayEngine(R, N, C, rule,
+                                                      new TableKernel(rule));
+            } else if (args[i].equals("--vector")) {
+                engineOption = args[i];
+                engine = Life::vectorEngine;
+            } else if (args[i].equals("--adaptive")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new AdaptiveEngine(R, N, C, rule);
+            } else if (args[i].equals("--dataflow")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new BitEngine(R, N, C, rule);
+                dataflow = true;
+            } else if (args[i].equals("--unbounded")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ChunkEngine(R, N, C, rule);
+            } else if (args[i].equals("--bytes")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ByteEngine(R, N, C, rule);
+            } else if (args[i].equals("--depth")) {
+                if (++i >= args.length) {
+                    die("Missing depth\n");
+                } else {
+                    int d = -1;
+                    try {
+                        d = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (d > 0 && d <= maxDepth) {
+                        depth = d;
+                    } else {
+                        die(String.format("Invalid depth: %s (must be 1 to %d)\n",
+                                          args[i], maxDepth));
+                    }
+                }
+            } else if (args[i].equals("--barrier")) {
+                if (++i >= args.length) {
+                    die("Missing barrier\n");
+                } else if (!java.util.Arrays.asList(Barrier.kinds).contains(args[i])) {
+                    die(String.format("Unknown barrier: %s (must be one of %s)\n",
+                                      args[i], String.join(", ", Barrier.kinds)));
+                } else {
+                    barrier = args[i];
+                }
+            } else if (args[i].equals("--rule")) {
+                if (++i >= args.length) {
+                    die("Missing rule\n");
+                } else {
+                    try {
+                        rule = Rule.parse(args[i]);
+                    } catch (IllegalArgumentException e) {
+                        die(e.getMessage() + "\n");
+                    }
+                }
+            } else if (args[i].equals("--offheap")) {
+                engineOption = args[i];
+                engine = Life::offHeapEngine;
+            } else if (args[i].equals("--map")) {
+                // Keep an off-heap board in the named file, resuming
+                // from it if it already holds a board of this size.
+                if (++i >= args.length) {
+                    die("Missing board file\n");
+                } else {
+                    mapFile = args[i];
+                    engine = Life::offHeapEngine;
+                    engineOption = "--map";
+                }
             } else {
                 die(String.format("Unexpected argument: %s\n", args[i]));
             }
         }
+        if (frameNanos == -1) {
+            frameNanos = (legacySpin > 0) ? (long) legacySpin * rows * cols
+                                          : defaultFrame;
+        }
+        if (rule == null) {
+            rule = Rule.LIFE;
+        } else if (rule.bornFromNothing()
+                   && ("--sparse".equals(engineOption)
+                       || "--unbounded".equals(engineOption) || target > 0)) {
+            die(String.format("Rule %s (with B0) cannot be used with --sparse, --unbounded or -g\n",
+                              rule));
+        }
+        if (depth > 1 && (engineOption != null || rule.states() > 2)) {
+            die("--depth only applies to the default engine and two-state rules\n");
+        }
+        if (rule.states() > 2) {
+            // Only ByteEngine stores the dying states.
+            if (target > 0) {
+                die(String.format("Rule %s cannot be used with -g\n", rule));
+            } else if (engineOption == null) {
+                engine = (R, N, C) -> new ByteEngine(R, N, C, rule);
+            } else if (!engineOption.equals("--bytes")) {
+                die(String.format("Rule %s has more than two states, and cannot be used with %s\n",
+                                  rule, engineOption));
+            }
+        }
     }
 
     // Creates list of workers and assigns each of them a task.
     public static void initializeWorkers() {
-    	double begin = 0;
-	double interval = (n * 1.0 /numThreads);
-        double end = interval;
+        worker_list = createWorkers(u.getLifeBoard(), u.getCoordinator());
+    }
 
-        worker_list = new ArrayList<>();
-	// Provide each thread with the same number of contiguous rows to look at as all other threads,
-	// give or take up to one row.
+    // Provide each thread with about the same number of cells as all other threads,
+    // as a run of neighbouring blocks (see Partition).  A small board may have fewer
+    // blocks than threads; the threads left over still meet the others at the barrier.
+    // As the run goes on, the threads time their blocks, and the boundaries between
+    // them move so that they take about the same time instead (see Rebalancer).
+    //
+    // The workers of a run share a new Barrier, so that nothing is left over from a
+    // run that was stopped part way through a generation.  The last thread to reach
+    // it moves the boundaries and updates the board, and there applies the UI's
+    // commands to pause, step or stop (see Coordinator.pace).
+    public static ArrayList<Worker> createWorkers(LifeBoard lb, Coordinator c) {
+        ArrayList<Worker> workers = new ArrayList<>();
+        if (dataflow) {
+            // Each thread takes a stripe of its own, and no barrier.
+            Dataflow df = lb.dataflow((int) numThreads);
+            for(int i=0; i<numThreads; i++) {
+                workers.add(new Worker(c, df, i, lb::updateDataflow));
+            }
+            return workers;
+        }
+        int blocks[][] = Partition.blocks(lb.getRows(), lb.getCols(),
+                                          lb.columnAlign(), (int) numThreads);
+        Task tasks[] = new Task[blocks.length];
+        double area[] = new double[blocks.length];
+        for (int b = 0; b < blocks.length; b++) {
+            tasks[b] = new Task(blocks[b][0], blocks[b][1], blocks[b][2], blocks[b][3]);
+        }
+        Partition.weigh(blocks, lb.getCols(), null, area);
+        Rebalancer rb = new Rebalancer(area, (int) numThreads);
+        Barrier meet = Barrier.create(barrier, (int) numThreads, c, () -> {
+            rb.rebalance();
+            lb.updateBoard();
+        });
         for(int i=0; i<numThreads; i++) {
-        	Worker w = new Worker(u.getLifeBoard(), u.getCoordinator(), u); // making a new thread
-		if(end >= n-1) {
-			end = n;
-		}
-        	w.setTask((int)begin, (int)end);
-        	worker_list.add(w); // add to worker_list to be ready to use
-        	begin += interval;
-        	end += interval;
+        	Worker w = new Worker(lb, c, meet, i, tasks, rb); // making a new thread
+        	workers.add(w); // add to worker_list to be ready to use
         }
+        return workers;
     }
 
     public static void main(String[] args)
@@ -146,13 +425,22 @@ public class Life {
         parseArgs(args);
         Life me = new Life();
 
-        JFrame f = new JFrame("Life");
-        f.addWindowListener(new WindowAdapter() {
-          public void windowClosing(WindowEvent e) {
-            System.exit(0);
-          }
-        });
-        me.buildUI(f, shape);
+        JFrame f = null;
+        if (headless) {
+            // Nothing to show, and perhaps no display to show it on.
+            me.buildUI(new JInternalFrame("Life"), shape);
+        } else {
+            f = new JFrame("Life");
+            f.addWindowListener(new WindowAdapter() {
+              public void windowClosing(WindowEvent e) {
+                u.quit();
+              }
+            });
+            me.buildUI(f, shape);
+        }
+        if (target > 0) {
+            fastForward(u.getLifeBoard());
+        }
         initializeWorkers();
         u.t_list = worker_list; // give a reference to the thread list
 
@@ -203,6 +491,27 @@ class Parser {
 					System.err.println("Cannot read spin. Is the format \"s: <number here>\"?");
 				}
 
+			} else if( line.startsWith("f:") ) {
+				long frame = Life.parseFrame(line.replace("f:", ""));
+				if (frame >= 0) {
+					config.frame = frame;
+				} else { 
+					System.err.println("Cannot read frame time. Is the format \"f: <milliseconds>\"?");
+				}
+			} else if( line.startsWith("n:") ) {
+				int size = parseSize(line.replace("n:", ""), "n");
+				config.width = size;
+				config.height = size;
+			} else if( line.startsWith("w:") ) {
+				config.width = parseSize(line.replace("w:", ""), "w");
+			} else if( line.startsWith("h:") ) {
+				config.height = parseSize(line.replace("h:", ""), "h");
+			} else if( line.startsWith("rule:") ) {
+				try {
+					config.rule = Rule.parse(line.replace("rule:", ""));
+				} catch (IllegalArgumentException e) {
+					System.err.println("Cannot read rule. Is the format \"rule: B<digits>/S<digits>\"?");
+				}
 			} else if( line.startsWith("shape:") ){
 				String s = line.replace("shape:", "");
 				List<Point> shape = getPoints(s);
@@ -214,8 +523,24 @@ class Parser {
 	return config;
    }  
 
+    // Reads one board dimension from the config file.  Returns -1 (not
+    // configured) if the value is missing or invalid.
+    private int parseSize(String s, String key) {
+	try {
+		int size = Integer.parseInt(s);
+		if (size > 0) {
+			return size;
+		}
+		System.err.println("Whoops! Board size in config file must be > 0.");
+	} catch (NumberFormatException e) {
+		System.err.println("Cannot read board size. Is the format \"" + key + ": <number here>\"?");
+	}
+	return -1;
+    }
+
     // A shape can be represented as a List of points on the UI. This method parses that information
     // from a string written in the following format: (x1,y1);(x2,y2);(x3,y3);(x4,y4) 	
+    // A point may also give the state of a dying cell, as in (x,y,state).
     private List<Point> getPoints(String s) {
 	String[] coordinates = s.split(";");
 	List<Point> points = new ArrayList<>();
@@ -225,8 +550,9 @@ class Parser {
 		try {
 			int x = Integer.parseInt(point[0]);
 			int y = Integer.parseInt(point[1]);
-			if (x > 0 && y > 0 && x < 100 && y < 100) { // NOTE: HARDCODED BOUNDRIES
-				points.add(new Point(x, y));
+			int st = (point.length > 2) ? Integer.parseInt(point[2]) : 1;
+			if (st > 0) { // coordinates are checked by the LifeBoard
+				points.add(new Point(x, y, st));
 			} else { 
 				System.err.println("Whoops! Coordinates must be in the bounds of the board in the config file.");
 			}
@@ -247,23 +573,37 @@ class Parser {
 // of time, we have implemented it as a general Java class.
 class Configuration {
     public int numThreads;
-    public int spin;
+    public int spin;        // legacy s:
+    public long frame;      // f:, in nanoseconds
+    public int width;
+    public int height;
     public List<Point> shape;	
+    public Rule rule;
 
     public Configuration() {
 	numThreads = -1;
 	spin = -1;
+	frame = -1;
+	width = -1;
+	height = -1;
 	shape = null;
+	rule = null;
     }
 
     public Configuration(int NT, int S, List<Point> SH) {
 	numThreads = NT;
 	spin = S;
+	frame = -1;
+	width = -1;
+	height = -1;
 	shape = SH;
+	rule = null;
     }
 
     public boolean isPresent() {
-        if (numThreads == -1 && spin == -1L && shape == null) {
+        if (numThreads == -1 && spin == -1L && frame == -1 && width == -1
+            && height == -1
+            && shape == null && rule == null) {
 		return false;
 	}
 	return true;
@@ -274,73 +614,80 @@ class Configuration {
 class Point {
     int x;
     int y;
+    int state = 1;  // alive, or dying under a Generations rule
 
     public Point(int row, int col) {
         x = row;
         y = col;
     }
 
+    public Point(int row, int col, int st) {
+        this(row, col);
+        state = st;
+    }
+
+    // Live cells are written (x,y); dying ones (x,y,state).
     public String toString() {
+	if (state != 1) {
+	    return "(" + String.valueOf(x) + "," + String.valueOf(y) + ","
+	        + String.valueOf(state) + ")";
+	}
 	return "(" + String.valueOf(x) + "," + String.valueOf(y) + ")";
     }
 }
 
-// Represents the range of rows that a thread should update.
-// start_index is inclusive and end_index is exclusive. In other words,
-// the range looks like, [start_index, end_index).
+// Represents the block of cells that a thread should update: rows
+// [start_index, end_index) of columns [left, right).  The start is
+// inclusive and the end exclusive in both directions.
 class Task {
 	int start_index; // First row to be updated (inclusive).
 	int end_index;   // First row after last row that should be update. 
-	public Task(int s, int e) {
+	int left;        // First column to be updated (inclusive).
+	int right;       // First column after the last one to be updated.
+	public Task(int s, int e, int l, int r) {
 		start_index = s;
 		end_index = e;
+		left = l;
+		right = r;
 	}
 }
 
 // The Worker is the thread that does the actual work of calculating new
 // generations.
 //
-class Worker extends Thread {
-    private final LifeBoard lb;
+class Worker implements Runnable {
+    private final LifeBoard lb;   // none with --dataflow: df updates it
     private final Coordinator c;
-    private final UI u;
+    private final Barrier b;   // where the workers meet after each generation
+    private final int id;      // this worker's number, 0 .. numThreads-1
+    private final Dataflow df; // instead of b, with --dataflow
+    private final Dataflow.Listener l;
 
-    private Task t; // Each thread has a task assigned to it, i.e., 
-		    // a range of rows that the thread should update.
+    private final Task tasks[];        // the blocks of the board
+    private final Rebalancer rb;       // which of them this thread updates
 
-    // The run() method of a Java Thread is never invoked directly by
-    // user code.  Rather, it is called by the Java runtime when user
-    // code calls start().
+    // run() is called by one of the UI's Crew of threads, once the UI
+    // has registered this Worker with the Coordinator (see onRunClick).
     public void run() {
         try {
-            c.register();
+            if (df != null) {
+                if (id < df.getParts()) {   // a small board may have fewer stripes
+                    df.run(id, l);
+                }
+                return;
+            }
             while (true) {
-                lb.doGeneration(t.start_index, t.end_index);
-		// Each thread updates around n/numThreads rows on the board. 
-		// However, they are only updated once the last thread has finished
-		// updating the board, which we keep track of by using a counter.
-                synchronized (c) {
-                	Life.counter= Life.counter+1;
-	                if(Life.counter < Life.numThreads) {
-			                try {
-			                	c.wait();// wait until other threads are done with current generation
-			                }catch (InterruptedException e) {
-			                	e.printStackTrace();
-			                }
-	                } else {
-	                	//If this is the last thread
-	                        Life.counter = 0; // reset counter to zero
-	                	lb.updateBoard(); // update the board
-        	                //pause if it is in step mode
-	                	c.notifyAll(); // notify all the threads that are waiting to proceed
-				// This if statement allows us to play one generation at a time by pausing
-				// the game after one generation has been completed.
-	                        if(u.step_switch == true) {
-        	                    u.pauseButton.doClick();
-                	        }
-			u.step_switch = false;
-	                }
+                long start = System.nanoTime();
+                for (int k = rb.first(id); k < rb.first(id+1); k++) {
+                    Task t = tasks[k];
+                    lb.doGeneration(t.start_index, t.end_index, t.left, t.right);
                 }
+                rb.record(id, System.nanoTime() - start);
+		// Each thread updates around n/numThreads cells on the board. 
+		// However, they are only updated once the last thread has finished
+		// updating the board, which the Barrier keeps track of; the last
+		// thread to arrive updates the board (see Life.createWorkers).
+                b.await(id);
             }
         }
         catch(Coordinator.KilledException e) {}
@@ -350,14 +697,27 @@ class Worker extends Thread {
     }
 
     // Constructor
-    public Worker(LifeBoard LB, Coordinator C, UI U) {
+    public Worker(LifeBoard LB, Coordinator C, Barrier B, int ID, Task T[], Rebalancer RB) {
         lb = LB;
         c = C;
-        u = U;
+        b = B;
+        id = ID;
+        df = null;
+        l = null;
+        tasks = T;
+        rb = RB;
     }
 
-    public void setTask(int s, int e) {
-    	this.t = new Task(s,e);
+    // With --dataflow: compute stripe ID of DF.
+    public Worker(Coordinator C, Dataflow DF, int ID, Dataflow.Listener L) {
+        lb = null;
+        c = C;
+        b = null;
+        id = ID;
+        df = DF;
+        l = L;
+        tasks = null;
+        rb = null;
     }
 }
 
@@ -370,33 +730,46 @@ class LifeBoard extends JPanel {
     private static final int dotsize = 6;
     private static final int border = dotsize;
     static  boolean headless = false;
-    private int B[][];  // board contents
-    private volatile int A[][];  // scratch board
-    private int T[][];  // temporary pointer
-    private int generation = 0;
+    private final LifeEngine engine;  // board contents
+    private final Color colors[];     // colour of each cell state
+    private final boolean unbounded;  // ChunkEngine: no edges, and scrollable
+
+    // Top left cell of the part of the world on display.  Only an
+    // unbounded world moves; a torus is always shown whole.
+    private volatile int top = 0;
+    private volatile int left = 0;
+    private int dragX, dragY, dragTop, dragLeft;   // where a drag started
+    private volatile Dataflow df = null;   // once --dataflow has started
+    private final TripleBuffer frames;     // see publishFrame
+    private long generation = 0;
 
     // following fields are set by constructor:
     private final Coordinator c;
     private final UI u;
-    private final int n;  // number of cells on a side
+    private final int rows;  // number of cells down the board
+    private final int cols;  // number of cells across the board
 
-    public int getN() {
-    	return n;
+    public int getRows() {
+    	return rows;
+    }
+
+    public int getCols() {
+    	return cols;
     }
 
     // Called by the UI when it wants to start over.
     //
     public void clear() {
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                B[i][j] = 0;
-            }
+        if (df != null) {
+            df.clear();
+        } else {
+            engine.clear();
         }
-        repaint();
+        publishFrame();
             // tell graphic system that LifeBoard needs to be re-rendered
     }
 
-    public int getGeneration() {
+    public long getGeneration() {
         return generation;
     }
 
@@ -405,52 +778,32 @@ class LifeBoard extends JPanel {
     // Worker.
     //
     // We split the original method into two separate methods, doGeneration and updateBoard.
-    // Instead of updating the entire board at once, each thread updates some number of rows. 
-    public void doGeneration(int start, int end) throws Coordinator.KilledException {
-        for (int i = start; i < end; i++) {
-            for (int j = 0; j < n; j++) {
-
-                // NOTICE: you are REQUIRED to call hesitate() EVERY TIME
-                // you update a LifeBoard cell.  The call serves two
-                // purposes: (1) it checks to see whether you should pause
-                // or stop; (2) it introduces delay that allows you to
-                // see the board evolving and that will give you the
-                // appearance of speedup with additional threads.
-
-                c.hesitate();
-                int im = (i+n-1) % n; int ip = (i+1) % n;
-                int jm = (j+n-1) % n; int jp = (j+1) % n;
-                switch (B[im][jm] + B[im][j] + B[im][jp] +
-                        B[i][jm]             + B[i][jp] +
-                        B[ip][jm] + B[ip][j] + B[ip][jp]) {
-                    case 0 :
-                    case 1 : A[i][j] = 0;       break;
-                    case 2 : A[i][j] = B[i][j]; break;
-                    case 3 : A[i][j] = 1;       break;
-                    case 4 :
-                    case 5 :
-                    case 6 :
-                    case 7 :
-                    case 8 : A[i][j] = 0;       break;
-                }
-            }
-        }
+    // Instead of updating the entire board at once, each thread updates some blocks of cells. 
+    // The cells themselves are stored and stepped by the LifeEngine.
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        engine.doGeneration(start, end, left, right);
+    }
 
+    // See LifeEngine.columnAlign.
+    //
+    public int columnAlign() {
+        return engine.columnAlign();
     }
 
     // This method updates and repaints the board (if necessary) when called. 
     // It is called when all of the threads have finished updating their rows.
     public void updateBoard() throws Coordinator.KilledException{
-    	    c.hesitate();
-	    T = B;  B = A;  A = T;
+    	    c.pace(engine.depth());
+	    engine.swap();
 	    if (headless) {
-	    	if (generation % 10 == 0) {
+	    	if (generation % 10 < engine.depth()) {   // every tenth generation
 	    		System.out.print(System.currentTimeMillis() + ", ");
 	    	}
-			++generation;
+			generation += engine.depth();
 	    } else {
-			repaint ();
-            ++generation;
+			publishFrame();
+            generation += engine.depth();
 	    }
 
     }
@@ -469,78 +822,241 @@ class LifeBoard extends JPanel {
 
         super.paintComponent(g);    // clears panel
 
-        // The following is synchronized to avoid race conditions with
-        // worker threads.
-        synchronized (u) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    drawSpot (i, j, g);
-                }
+        // The latest snapshot from publishFrame, not the board itself: the
+        // threads computing the board never wait for this, nor this for
+        // them.
+        byte f[] = frames.latest();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                drawSpot (i, j, f[i*cols + j], g);
+            }
+        }
+    }
+
+    // Take a snapshot of the part of the board on display, for
+    // paintComponent, and ask for it to be painted.  Called by the thread
+    // that finishes each generation, and by the UI only while stopped or
+    // while that thread is parked (Coordinator.isParked), so that no two
+    // threads do at once.
+    //
+    public void publishFrame() {
+        if (headless) {
+            return;
+        }
+        byte f[] = frames.back();
+        int t = top, l = left;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                f[i*cols + j] = (byte) cell(t + i, l + j);
             }
         }
+        frames.publish();
+        repaint();
     }
 
     public void toggleClick (int mx, int my) {
         Dimension d = (getSize ());
-        int x = n * mx / d.width;
-        int y = n * my / d.height;
-        Graphics g = getGraphics ();
-        mx = d.width * x / n;       // round to nearest spot center
-        my = d.height * y / n;      // round to nearest spot center
-        B[x][y] = 1 - B[x][y];
-        drawSpot (x, y, g);
-        g.dispose ();   // reclaim resources eagerly
+        int i = rows * my / d.height;
+        int j = cols * mx / d.width;
+        if (i >= rows || j >= cols) {
+            return;     // click on the border, past the last spot
+        }
+        int ci = top + i, cj = left + j;
+        setCell(ci, cj, (cell(ci, cj) == 0) ? 1 : 0);
+        publishFrame();
     }
 
-    private void drawSpot (int x, int y, Graphics g) {
-        Dimension d = (getSize());
-        int mx = d.width * x / n;       // round to nearest spot center
-        int my = d.height * y / n;      // round to nearest spot center
-        if (B[x][y] == 1) {
-            g.setColor(Color.blue);
+    // Called by the UI when the mouse is pressed and then dragged: scroll
+    // an unbounded world along with the mouse.
+    //
+    public void startDrag(int mx, int my) {
+        dragX = mx;
+        dragY = my;
+        dragTop = top;
+        dragLeft = left;
+    }
+
+    // The new view appears with the next generation, or when the UI calls
+    // publishFrame (while stopped or paused).
+    //
+    public void drag(int mx, int my) {
+        if (!unbounded) {
+            return;
+        }
+        Dimension d = (getSize ());
+        top = dragTop - rows * (my - dragY) / d.height;
+        left = dragLeft - cols * (mx - dragX) / d.width;
+    }
+
+    // Cell (i, j) of the board, as the display and editing see it: with
+    // --dataflow, different stripes may be at different generations.
+    //
+    private int cell(int i, int j) {
+        Dataflow d = df;
+        return (d != null) ? d.get(i, j) : engine.get(i, j);
+    }
+
+    private void setCell(int i, int j, int v) {
+        Dataflow d = df;
+        if (d != null) {
+            d.set(i, j, v);
         } else {
-            g.setColor(getBackground ());
+            engine.set(i, j, v);
+        }
+    }
+
+    // The Dataflow that runs the board with --dataflow, cut into the given
+    // number of stripes the first time it is asked for.  Only safe while
+    // stopped.
+    //
+    public Dataflow dataflow(int parts) {
+        if (df == null) {
+            df = new Dataflow((BitEngine) engine, c, rows, parts, generation);
         }
-        g.fillOval (mx, my, dotsize, dotsize);
+        return df;
+    }
+
+    // Called by the thread that computes the top stripe under --dataflow,
+    // after each of its generations: the generation of the board is that
+    // of the stripe furthest behind.
+    //
+    public void updateDataflow() throws Coordinator.KilledException {
+        c.pace(1);      // stripe 0 has moved on one generation
+        long g = df.getGeneration();
+        if (headless) {
+            if (g / 10 != generation / 10) {   // every tenth generation
+                System.out.print(System.currentTimeMillis() + ", ");
+            }
+        } else {
+            publishFrame();
+        }
+        generation = g;
+    }
+
+    // True if cell (i, j) is part of the world: anywhere, if it is
+    // unbounded.
+    //
+    private boolean inWorld(int i, int j) {
+        return unbounded || (i >= 0 && j >= 0 && i < rows && j < cols);
+    }
+
+    // Spot (i, j) of the display shows cell (top+i, left+j), which was in
+    // the given state when the snapshot was taken.  It is drawn
+    // i spots down and j spots across, so that a Point (x, y) from a
+    // config file appears x across and y down.
+    //
+    private void drawSpot (int i, int j, int state, Graphics g) {
+        Dimension d = (getSize());
+        int mx = d.width * j / cols;        // round to nearest spot center
+        int my = d.height * i / rows;       // round to nearest spot center
+        int dot = Math.max(1, Math.min(dotsize, d.width / cols));
+        g.setColor(colors[state]);
+        g.fillOval (mx, my, dot, dot);
     }
 
     // Constructor
     //
-    public LifeBoard(int N, Coordinator C, UI U,
-                     boolean hdless, boolean glider, List<Point> shape) {
-        n = N;
+    public LifeBoard(int R, int N, Coordinator C, UI U,
+                     boolean hdless, boolean glider, EngineFactory ef, List<Point> shape) {
+        rows = R;
+        cols = N;
         c = C;
         u = U;
         headless = hdless;
 
-        A = new int[n][n];  // initialized to all 0
-        B = new int[n][n];  // initialized to all 0
+        engine = ef.create(rows, cols, c);
+        unbounded = engine instanceof ChunkEngine;
+        frames = headless ? null : new TripleBuffer(rows * cols);
 
-        setPreferredSize(new Dimension(width+border*2, height+border*2));
+        // Fit the longer side of the board to the canvas.
+        double scale = (double) Math.max(width, height) / Math.max(rows, cols);
+        setPreferredSize(new Dimension((int) (cols*scale) + border*2,
+                                       (int) (rows*scale) + border*2));
         setBackground(Color.white);
         setForeground(Color.black);
 
+        // Live cells are blue; dying ones fade from blue towards the
+        // background as they get closer to dead.
+        colors = new Color[engine.states()];
+        colors[0] = getBackground();
+        for (int s = 1; s < colors.length; s++) {
+            float f = (float) (s - 1) / (colors.length - 1);
+            colors[s] = new Color(f, f, 1.0f - 0.5f*f);
+        }
+
+        if (engine instanceof OffHeapEngine
+            && ((OffHeapEngine) engine).isResumed()) {
+            // Pick up where the mapped board left off.
+            generation = ((OffHeapEngine) engine).getGeneration();
+            publishFrame();
+            return;
+        }
+
         clear();
 
         if (glider) {
             // create an initial glider in the upper left corner
-            B[0][1] = B[1][2] = B[2][0] = B[2][1] = B[2][2] = 1;
+            engine.set(0, 1, 1);  engine.set(1, 2, 1);
+            engine.set(2, 0, 1);  engine.set(2, 1, 1);  engine.set(2, 2, 1);
         } else if (shape != null) { 
         	// If the user specified a shape in the config file, it is added to the UI here.
 	    	for (Point s: shape) {
-				B[s.y][s.x] = 1;
+				if (inWorld(s.y, s.x) && s.state < engine.states()) {
+					engine.set(s.y, s.x, s.state);
+				} else {
+					System.err.println("Whoops! Coordinates must be in the bounds of the board in the config file.");
+				}
 	    	}
 		}
+        publishFrame();
+    }
+
+    // Replaces the board with the given occupied spots (as returned by
+    // getPoints), at the given generation.  Only safe while stopped.
+    public void load(List<Point> points, long gen) {
+        clear();
+        for (Point p : points) {
+            setCell(p.y, p.x, p.state);
+        }
+        generation = gen;
+        publishFrame();
+    }
+
+    // Same, from the live cells as {x, y} pairs, as HashLife gives them.
+    public void load(int cells[][], long gen) {
+        load(points(cells), gen);
+    }
 
+    // Live cells as Points, from {x, y} pairs (from HashLife or ChunkEngine).
+    private static List<Point> points(int cells[][]) {
+        List<Point> points = new ArrayList<>(cells.length);
+        for (int p[] : cells) {
+            points.add(new Point(p[0], p[1]));
+        }
+        return points;
+    }
+
+    // The live cells as {x, y} pairs, as HashLife takes them.
+    public int[][] getCells() {
+        List<Point> points = getPoints();
+        int cells[][] = new int[points.size()][];
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = new int[] {points.get(k).x, points.get(k).y};
+        }
+        return cells;
     }
 
     // Returns a representation of the board in which each point represents an occupied spot.
     public List<Point> getPoints() {
+	if (unbounded) {
+	    return points(((ChunkEngine) engine).getCells());
+	}
 	List<Point> points = new ArrayList<>();
-	for(int i = 0; i < n; i++) {
-	    for(int j = 0; j < n; j++) {
-		if (B[i][j] == 1) {
-		    points.add(new Point(j, i));
+	for(int i = 0; i < rows; i++) {
+	    for(int j = 0; j < cols; j++) {
+		int s = cell(i, j);
+		if (s != 0) {
+		    points.add(new Point(j, i, s));
 		}
   	    }
 	}
@@ -565,13 +1081,12 @@ class UI extends JPanel {
     private static final int externalBorder = 6;
 
     private static final int stopped = 0;
-    private static final int running = 1;
-    private static final int paused = 2;
+    private static final int running = 1;     // or paused: see c.isPaused()
 
     private int state = stopped;
 
-    public boolean step_switch = false;
     public long numThreads;
+    private final Crew crew;   // the threads that run the Workers, from the UI to Quit
     public final String outputFile = "output_config.txt";
 
     public final JButton runButton ;
@@ -582,6 +1097,8 @@ class UI extends JPanel {
 
     // Added a button that allows the user to proceed in the game by one generatio 
     public final JButton stepButton ; 
+    // How many generations the step button moves on.
+    public final JSpinner stepCount;
     // Added a button that allows the user to get the current configuration of the board, 
     //so long as the game is paused or stopped.
     public final JButton configButton; 
@@ -597,13 +1114,14 @@ class UI extends JPanel {
 
     // Constructor
     //
-    public UI(int N, RootPaneContainer pane, int pauseIterations,
-              boolean headless, boolean glider, long NT, List<Point> shape) {
+    public UI(int R, int N, RootPaneContainer pane, long frameNanos,
+              boolean headless, boolean glider, EngineFactory ef, long NT, List<Point> shape) {
         final UI u = this;
-        c = new Coordinator(pauseIterations);
-        lb = new LifeBoard(N, c, u, headless, glider, shape);
+        c = new Coordinator(frameNanos);
+        lb = new LifeBoard(R, N, c, u, headless, glider, ef, shape);
 	
 	numThreads = NT;
+        crew = new Crew((int) NT);
 
         final JPanel b = new JPanel();   // button panel
 
@@ -613,6 +1131,7 @@ class UI extends JPanel {
         clearButton = new JButton("Clear");
         quitButton = new JButton("Quit");
         stepButton = new JButton("Step"); 
+        stepCount = new JSpinner(new SpinnerNumberModel(1, 1, 1000000, 1));
 		configButton = new JButton("Get Configuration"); 
 
         // Note that the addListener calls below pass an annonymous
@@ -621,74 +1140,69 @@ class UI extends JPanel {
         lb.addMouseListener(new MouseListener() {
             public void mouseClicked(MouseEvent e) {
                 if (state == stopped) {
+                    c.stop();   // in case the last run has not quite stopped
                     lb.toggleClick(e.getX(), e.getY());
                 } // else do nothing
             }
             public void mouseEntered(MouseEvent e) { }
             public void mouseExited(MouseEvent e) { }
-            public void mousePressed(MouseEvent e) { }
+            public void mousePressed(MouseEvent e) {
+                lb.startDrag(e.getX(), e.getY());
+            }
             public void mouseReleased(MouseEvent e) { }
         });
 
+        lb.addMouseMotionListener(new MouseMotionAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                lb.drag(e.getX(), e.getY());
+                if (state == stopped) {
+                    c.stop();
+                    lb.publishFrame();
+                } else if (c.isParked()) {
+                    lb.publishFrame();  // paused: nothing else will
+                }
+            }
+        });
+
         runButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                root.setDefaultButton(pauseButton);
                 if (state == stopped) {
-                    state = running;
-                    root.setDefaultButton(pauseButton);
-
-                    // reset t_list
-                    t_list = new ArrayList<>();
-                    double s = 0;
-                    double r =  ((lb.getN()*1.0)/(Life.numThreads*1.0));
-                    for(int i=0; i<Life.numThreads; i++) {
-                    	Worker w = new Worker(lb, c, u); // making a new thread
-            			if(r >= lb.getN()-1){
-            				r = lb.getN();
-            			}	
-                    	w.setTask((int)s, (int)r);
-                    	t_list.add(w); // add to worker_list to be ready to use
-                    	s += (lb.getN()*1.0)/(1.0*Life.numThreads);
-                    	r +=  (lb.getN()*1.0)/(1.0*Life.numThreads);
-                    }
-
-                    onRunClick(t_list);
-                } else if (state == paused) {
-                    state = running;
-                    root.setDefaultButton(pauseButton);
-                    c.toggle();
+                    start(0);
+                } else {
+                    c.post(Coordinator.RESUME);
                 }
             }
         });
-	// This button allows the user to look at the game generation by generation.
-	// If the game is currently running, this button will pause the game. 
-	// Otherwise, the button "clicks on" the run button, only allowing it to go 
-	// forward by one generation. This restriction is in the run method of the threads
-	// themselves.
+	// This button allows the user to look at the game generation by generation
+	// (or stepCount generations at a time): the game goes on that many generations
+	// from the one it is on, starting it if need be, and then pauses.  The thread
+	// that updates the board does the counting (see Coordinator.pace).
         stepButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                step_switch = true;
-                if (state == running) {
-                    pauseButton.doClick();
-                } else if (state == paused) {
-                    runButton.doClick();
-                } else if (state == stopped) {
-                    runButton.doClick();
+                int n = (Integer) stepCount.getValue();
+                root.setDefaultButton(runButton);
+                if (state == stopped) {
+                    start(n);
+                } else {
+                    c.post(Coordinator.STEP, n);
                 }
             }
         });
         pauseButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 if (state == running) {
-                    state = paused;
                     root.setDefaultButton(runButton);
-                    c.toggle();
+                    c.post(Coordinator.PAUSE);
                 }
             }
         });
+        // The run stops at the end of the generation it is on; whatever
+        // touches the board next calls c.stop() to be sure it has.
         stopButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 state = stopped;
-                c.stop();
+                c.post(Coordinator.STOP);
                 root.setDefaultButton(runButton);
             }
         });
@@ -702,7 +1216,7 @@ class UI extends JPanel {
         });
         quitButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                System.exit(0);
+                quit();
             }
         });
 	// This button allows the user to get the current configuration of the board, so long
@@ -710,11 +1224,11 @@ class UI extends JPanel {
 	// and store the configuration in there.
 	configButton.addActionListener(new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
-			if (state == running) {
+			if (state == running && !c.isPaused()) {
 			    System.err.println("Game must be paused or stopped in order to get configuration.");
-			} else if (state == paused || state == stopped) {
+			} else {
 			    try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile))) {
-					bw.write(buildConfigString(pauseIterations));
+					bw.write(buildConfigString(frameNanos));
 			    } catch (IOException ex) { 
 			    	System.err.println("Error: could not create config file."); 
 			    }
@@ -731,6 +1245,7 @@ class UI extends JPanel {
         b.add(clearButton);
         b.add(quitButton);
         b.add(stepButton);
+        b.add(stepCount);
 		b.add(configButton);
 
 
@@ -748,14 +1263,23 @@ class UI extends JPanel {
     }
 
     // Builds the string that contains all of the information to be put in the config file.
-    public String buildConfigString(int pauseIterations) {
+    public String buildConfigString(long frameNanos) {
 		StringBuilder content = new StringBuilder();
 
 		content.append("t:");
 		content.append(numThreads);
 		content.append("\n");
-		content.append("s:");
-		content.append(pauseIterations);
+		content.append("f:");
+		content.append(frameNanos / 1e6);
+		content.append("\n");
+		content.append("w:");
+		content.append(lb.getCols());
+		content.append("\n");
+		content.append("h:");
+		content.append(lb.getRows());
+		content.append("\n");
+		content.append("rule:");
+		content.append(Life.getRule());
 		content.append("\n");
 		content.append("shape:");
 
@@ -771,9 +1295,34 @@ class UI extends JPanel {
     }
 
     // onRunClick starts all of the threads passed into it.
+    // Start a new run, which pauses after the given number of generations
+    // if that is more than 0.
+    private void start(int steps) {
+        state = running;
+        c.stop();       // in case the last run has not quite stopped
+        if (steps > 0) {
+            c.post(Coordinator.STEP, steps);
+        }
+        t_list = Life.createWorkers(lb, c);
+        onRunClick(t_list);
+    }
+
+    // Hands each Worker to a thread of the Crew, which is already running,
+    // so a Run starts no new threads.  Each Worker is registered before it
+    // is handed over, so that stop waits for those that have not started
+    // yet.
     public void onRunClick(ArrayList<Worker> t_l) {
     	for(int i=0; i<t_l.size(); i++) {
-    		t_l.get(i).start();
+    		c.register();
+    		crew.run(i, t_l.get(i));
     	}
     }
+
+    // Stop the game and shut its threads down, then exit: for Quit, and
+    // for closing the window.
+    public void quit() {
+        c.stop();
+        crew.shutdown(1000);
+        System.exit(0);
+    }
 }
@@ -0,0 +1,89 @@
+/*
+    LifeEngine.java
+
+    Storage and stepping strategy behind a LifeBoard.  The LifeBoard
+    handles display and the threading code decides who computes which
+    rows; an engine decides how the cells are laid out in memory and how
+    a generation is computed from them.
+ */
+
+// Every engine keeps two generations of the board.  doGeneration
+// computes rows [start, end) of the next generation (or the one depth()
+// generations on) into scratch storage; it may be called concurrently by several threads as long as
+// their row ranges do not overlap.  swap makes the scratch generation
+// current, and must only be called once every row has been computed
+// (i.e., by the last thread to finish, as in LifeBoard.updateBoard).
+//
+interface LifeEngine {
+    // State of cell (i, j) in the current generation: 1 alive, 0 dead,
+    // or 2 .. states()-1 dying, under a Generations rule.
+    int get(int i, int j);
+
+    // Set cell (i, j) of the current generation.  Only safe while no
+    // generation is being computed.
+    void set(int i, int j, int v);
+
+    // Kill every cell of the current generation.
+    void clear();
+
+    // Compute the next generation of rows [start, end).
+    void doGeneration(int start, int end) throws Coordinator.KilledException;
+
+    // Compute the next generation of the cells in rows [start, end) and
+    // columns [left, right).  left must be a multiple of columnAlign(),
+    // and so must right unless it is the last column.  Engines that only
+    // compute whole rows are only passed the whole width.
+    default void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        doGeneration(start, end);
+    }
+
+    // Number of columns that column ranges must be aligned to (a tile, or
+    // a word of packed cells), or 0 if the engine computes whole rows.
+    default int columnAlign() {
+        return 0;
+    }
+
+    // Make the generation computed by doGeneration current.
+    void swap();
+
+    // Number of cells that are not dead, or -1 for engines that cannot
+    // count them quickly.
+    default long population() {
+        return -1;
+    }
+
+    // Replace the current generation with the current generation of e,
+    // which holds a rows by cols board as well.  Only safe while no
+    // generation is being computed.
+    default void copyFrom(LifeEngine e, int rows, int cols) {
+        clear();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int v = e.get(i, j);
+                if (v != 0) {
+                    set(i, j, v);
+                }
+            }
+        }
+    }
+
+    // Number of generations that one round of doGeneration and swap
+    // advances the board.
+    default int depth() {
+        return 1;
+    }
+
+    // Number of cell states the engine stores.
+    default int states() {
+        return 2;
+    }
+
+    // Number of tiles of row i that the next doGeneration will actually
+    // compute, for engines that skip the settled parts of the board, or
+    // -1 if every cell of every row is computed.  Lets the threading code
+    // spread the real work evenly.
+    default int activeTiles(int i) {
+        return -1;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+    OffHeapEngine.java
+
+    A BitEngine whose two generations live outside the Java heap, in
+    memory-mapped file regions.  The board can then be far larger than
+    -Xmx allows and puts no load on the garbage collector.  When the map
+    is a named file, the board survives the program: reopening the same
+    file (with the same board size) resumes from the last generation that
+    was completed.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// The file holds a small header followed by the two generations, each
+// laid out exactly like BitEngine's arrays: row after row, `words' longs
+// per row.  A single mapping is limited to 2GB, so each generation is
+// mapped in chunks of whole rows.  The header records which generation
+// is current; it is only rewritten by swap, after every row of the new
+// generation has been stored, so a run that is killed part way through
+// a generation reopens at the one before.
+//
+class OffHeapEngine implements LifeEngine {
+    private static final long MAGIC = 0x4c69666542697473L;   // "LifeBits"
+    private static final int HEADER = 4096;       // bytes before generation 0
+    private static final long CHUNK = 1L << 30;   // largest single mapping, in bytes
+
+    // Header fields, by byte offset.
+    private static final int MAGIC_AT = 0;
+    private static final int ROWS_AT = 8;
+    private static final int COLS_AT = 12;
+    private static final int GENERATION_AT = 16;
+    private static final int CURRENT_AT = 24;
+
+    private final MappedByteBuffer header;
+    private final LongBuffer gen[][];  // [generation][chunk]
+    private int cur;                   // which of gen is the board contents
+    private long generation;           // number of swaps since the file was created
+    private final boolean resumed;     // file already held this board
+
+    private final Coordinator c;
+    private final int rows;       // number of cells down the board
+    private final int cols;       // number of cells across the board
+    private final int words;      // longs per row
+    private final int lastBits;   // cells held by the last word of a row
+    private final long lastMask;  // valid bits of the last word of a row
+    private final int chunkRows;  // rows per mapping
+    private final Rule rule;
+
+    // Chunk of generation g that holds row i.
+    //
+    private LongBuffer chunk(int g, int i) {
+        return gen[g][i / chunkRows];
+    }
+
+    // Index of row i within its chunk.
+    //
+    private int base(int i) {
+        return (i % chunkRows) * words;
+    }
+
+    public int get(int i, int j) {
+        return (int) (chunk(cur, i).get(base(i) + (j >>> 6)) >>> j) & 1;
+    }
+
+    public void set(int i, int j, int v) {
+        LongBuffer b = chunk(cur, i);
+        int k = base(i) + (j >>> 6);
+        if (v != 0) {
+            b.put(k, b.get(k) | (1L << j));
+        } else {
+            b.put(k, b.get(k) & ~(1L << j));
+        }
+    }
+
+    public void clear() {
+        for (LongBuffer b : gen[cur]) {
+            for (int k = 0; k < b.capacity(); k++) {
+                b.put(k, 0L);
+            }
+        }
+    }
+
+    // As in BitEngine: word w of a row, shifted so each bit holds its
+    // western or eastern neighbour.
+    //
+    private long west(LongBuffer b, int r, int w) {
+        long carry = (w > 0) ? b.get(r+w-1) >>> 63
+                             : (b.get(r+words-1) >>> (lastBits-1)) & 1;
+        return (b.get(r+w) << 1) | carry;
+    }
+
+    private long east(LongBuffer b, int r, int w) {
+        if (w < words-1) {
+            return (b.get(r+w) >>> 1) | (b.get(r+w+1) << 63);
+        }
+        return (b.get(r+w) >>> 1) | ((b.get(r) & 1) << (lastBits-1));
+    }
+
+    public int columnAlign() {
+        return 64;
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        doGeneration(start, end, 0, cols);
+    }
+
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        int w1 = (right + 63) >>> 6;
+        for (int i = start; i < end; i++) {
+            int im = (i+rows-1) % rows;
+            int ip = (i+1) % rows;
+            LongBuffer a = chunk(cur, im), b = chunk(cur, i), d = chunk(cur, ip);
+            LongBuffer out = chunk(1-cur, i);
+            int up = base(im), mid = base(i), down = base(ip);
+            for (int w = left >>> 6; w < w1; w++) {
+                c.hesitate();
+                long next = BitEngine.nextWord(rule,
+                        west(a, up, w), a.get(up+w), east(a, up, w),
+                        west(b, mid, w), b.get(mid+w), east(b, mid, w),
+                        west(d, down, w), d.get(down+w), east(d, down, w));
+                out.put(mid+w, (w == words-1) ? next & lastMask : next);
+            }
+        }
+    }
+
+    public void swap() {
+        cur = 1-cur;
+        ++generation;
+        header.putLong(GENERATION_AT, generation);
+        header.putInt(CURRENT_AT, cur);
+    }
+
+    // True if the board was reopened from an existing file rather than
+    // starting out empty.
+    //
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Constructor.  With a null file name the board is kept in a
+    // temporary file that is deleted on exit, so that it is still not
+    // limited by -XX:MaxDirectMemorySize (which defaults to -Xmx).
+    //
+    public OffHeapEngine(int R, int N, Coordinator C, Rule L, String fileName)
+            throws IOException {
+        rule = L;
+        rows = R;
+        cols = N;
+        c = C;
+        words = (cols + 63) >>> 6;
+        lastBits = cols - (words-1)*64;
+        lastMask = (lastBits == 64) ? -1L : (1L << lastBits) - 1;
+
+        long rowBytes = (long) words * 8;
+        if (rowBytes > CHUNK) {
+            throw new IOException("board is too wide to map");
+        }
+        chunkRows = (int) Math.min(rows, CHUNK / rowBytes);
+        long genBytes = rows * rowBytes;
+
+        File f;
+        boolean existing;
+        if (fileName == null) {
+            f = File.createTempFile("life", ".board");
+            f.deleteOnExit();
+        } else {
+            f = new File(fileName);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel fc = raf.getChannel()) {
+            existing = fc.size() == HEADER + 2*genBytes;
+            if (!existing) {
+                raf.setLength(0);   // start from a zero-filled file
+                raf.setLength(HEADER + 2*genBytes);
+            }
+            header = fc.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+            header.order(ByteOrder.nativeOrder());
+            resumed = existing
+                && header.getLong(MAGIC_AT) == MAGIC
+                && header.getInt(ROWS_AT) == rows
+                && header.getInt(COLS_AT) == cols;
+
+            int chunks = (rows + chunkRows - 1) / chunkRows;
+            gen = new LongBuffer[2][chunks];
+            for (int g = 0; g < 2; g++) {
+                for (int k = 0; k < chunks; k++) {
+                    long first = (long) k * chunkRows;
+                    long size = Math.min(chunkRows, rows - first) * rowBytes;
+                    gen[g][k] = fc.map(FileChannel.MapMode.READ_WRITE,
+                                       HEADER + g*genBytes + first*rowBytes, size)
+                                  .order(ByteOrder.nativeOrder()).asLongBuffer();
+                }
+            }
+        }   // the mappings stay valid after the channel is closed
+
+        if (resumed) {
+            generation = header.getLong(GENERATION_AT);
+            cur = header.getInt(CURRENT_AT);
+        } else {
+            if (existing) {
+                // Not one of our boards, or one of another size: start
+                // this one from scratch.
+                cur = 1;  clear();
+                cur = 0;  clear();
+            }
+            header.putLong(MAGIC_AT, MAGIC);
+            header.putInt(ROWS_AT, rows);
+            header.putInt(COLS_AT, cols);
+            header.putLong(GENERATION_AT, 0);
+            header.putInt(CURRENT_AT, 0);
+        }
+    }
+}
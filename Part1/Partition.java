@@ -0,0 +1,127 @@
+/*
+    Partition.java
+
+    Divides the board among threads (or tasks) as rectangular blocks,
+    instead of stripes of whole rows.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A stripe of a wide board does not fit in cache, and with many threads
+// it becomes a row or two high, so that most of what a thread reads is
+// the halo it shares with its neighbours.  Blocks are instead made about
+// blockCells cells in area: blockCols wide if the engine can compute part
+// of a row (see LifeEngine.columnAlign), and as high as that leaves, but
+// low enough that every part gets at least one block.
+//
+// The blocks are then dealt out in a snake order, left to right along the
+// first row of blocks, right to left along the next, and so on, each part
+// taking a run of consecutive blocks.  Consecutive blocks touch, so most
+// of a part's blocks are next to others of its own, and the halo between
+// them is read by the same thread.
+//
+class Partition {
+    private static final int blockCells = 1 << 16;   // 256 KB of ints
+    private static final int blockCols = 256;
+
+    // Split a rows by cols board into at most parts lists of blocks, each
+    // {top, bottom, left, right} with bottom and right exclusive, of
+    // roughly equal weight.  A block's weight is its area, or if weight is
+    // not null, the sum of weight[i] over its rows i, times the fraction
+    // of the columns it covers; blocks that weigh nothing are left out.
+    // align is the engine's columnAlign().
+    //
+    public static List<List<int[]>> split(int rows, int cols, int align,
+                                          int parts, int weight[]) {
+        int blocks[][] = blocks(rows, cols, align, parts);
+        double w[] = new double[blocks.length];
+        weigh(blocks, cols, weight, w);
+        int cut[] = new int[parts + 1];
+        int n = cut(w, parts, cut);
+
+        List<List<int[]>> result = new ArrayList<>();
+        for (int p = 0; p < n; p++) {
+            List<int[]> part = new ArrayList<>();
+            for (int b = cut[p]; b < cut[p+1]; b++) {
+                if (w[b] > 0) {
+                    part.add(blocks[b]);
+                }
+            }
+            result.add(part);
+        }
+        return result;
+    }
+
+    // The blocks of a board to be split into parts, in snake order.
+    //
+    public static int[][] blocks(int rows, int cols, int align, int parts) {
+        int bw = cols;
+        if (align > 0 && cols > blockCols) {
+            bw = Math.max(align, blockCols / align * align);
+        }
+        int across = (cols + bw - 1) / bw;
+        int bh = Math.max(1, Math.min(blockCells / bw,
+                                      (int) ((long) rows * across / parts)));
+
+        int down = (rows + bh - 1) / bh;
+        int blocks[][] = new int[down * across][];
+        for (int r = 0; r < down; r++) {
+            int top = r * bh;
+            int bottom = Math.min(rows, top + bh);
+            for (int k = 0; k < across; k++) {
+                int left = ((r % 2 == 0) ? k : across-1 - k) * bw;
+                int right = Math.min(cols, left + bw);
+                blocks[r*across + k] = new int[] {top, bottom, left, right};
+            }
+        }
+        return blocks;
+    }
+
+    // Set w[b] to the weight of blocks[b] (see split).
+    //
+    public static void weigh(int blocks[][], int cols, int weight[], double w[]) {
+        for (int b = 0; b < blocks.length; b++) {
+            int bl[] = blocks[b];
+            long sum = bl[1] - bl[0];
+            if (weight != null) {
+                sum = 0;
+                for (int i = bl[0]; i < bl[1]; i++) {
+                    sum += weight[i];
+                }
+            }
+            w[b] = (double) sum * (bl[3] - bl[2]) / cols;
+        }
+    }
+
+    // Cut the blocks, whose weights are w, into at most parts runs of
+    // about equal weight: run p is blocks [cut[p], cut[p+1]).  Returns the
+    // number of runs.  Allocates nothing, so that it can be used every
+    // generation.
+    //
+    public static int cut(double w[], int parts, int cut[]) {
+        double total = 0;
+        int last = -1;      // last block with any weight
+        for (int b = 0; b < w.length; b++) {
+            total += w[b];
+            if (w[b] > 0) {
+                last = b;
+            }
+        }
+        double share = total / parts;
+        double due = share;
+        double done = 0;
+        int n = 0;
+        cut[0] = 0;
+        for (int b = 0; b <= last; b++) {
+            done += w[b];
+            if (w[b] > 0 && (b == last || (n < parts-1 && done >= due))) {
+                cut[++n] = b+1;
+                while (due <= done) {
+                    due += share;
+                }
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+    RowKernel.java
+
+    A replacement for the inner loop of ArrayEngine: computes the next
+    generation of a run of cells in one row (or a few rows) at once.
+ */
+
+// Cells are laid out as in ArrayEngine: k is the index in B of the first
+// cell of the run, and the cells above and below a cell are stride ints
+// away.  The halo means no index ever needs wrapping.
+//
+// A kernel that works on blocks of several rows says so with height;
+// ArrayEngine then hands it up to that many rows at a time, but fewer
+// where the row range of a Task or a tile ends first.
+//
+interface RowKernel {
+    // Compute A[k + r*stride .. k + r*stride + n) from B for each of the h
+    // rows r < h, where h <= height(), and return nonzero iff some cell
+    // changed.
+    int step(int[] B, int[] A, int k, int n, int stride, int h);
+
+    // Most rows the kernel computes at once.
+    default int height() {
+        return 1;
+    }
+
+    // The kernel in vector/VectorKernel.java for the given rule, which
+    // uses the incubating Vector API, or null if it was not compiled or
+    // the jdk.incubator.vector module was not added at run time.
+    //
+    static RowKernel vector(Rule rule) {
+        try {
+            return (RowKernel) Class.forName("VectorKernel")
+                                    .getDeclaredConstructor(Rule.class)
+                                    .newInstance(rule);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
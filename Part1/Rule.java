@@ -0,0 +1,168 @@
+/*
+    Rule.java
+
+    An outer-totalistic Life-like rule, such as B3/S23 (Conway's Life),
+    B36/S23 (HighLife), B3678/S34678 (Day & Night) or B2/S (Seeds): a
+    dead cell is born if its number of live neighbours is one of the
+    digits after B, and a live cell survives if it is one of the digits
+    after S.
+
+    A rule of the Generations family adds a number of states, as in
+    B2/S/C3 (Brian's Brain).  A live cell that does not survive then
+    goes through states 2, 3, ... C-1 before it is dead again; cells in
+    those states do not count as live neighbours and cannot be born.
+    Only ByteEngine can run rules with more than two states.
+ */
+
+// A rule is parsed once and compiled into the forms the engines want, so
+// that applying it is a lookup rather than a test of the neighbour count:
+//
+//   next[2n + state] is whether a dead (0) or live (1) cell with n live
+//   neighbours is alive next generation (this is also the count
+//   SparseEngine accumulates);
+//
+//   born[n] and stays[n] are all ones or all zeros, for the bitwise
+//   engines, which evaluate the rule for 64 cells at once (see nextBits).
+//
+class Rule {
+    public static final Rule LIFE = parse("B3/S23");
+
+    private final int births;      // bit n set if born with n neighbours
+    private final int survivals;   // bit n set if survives with n neighbours
+    private final int states;      // C; 2 for plain Life-like rules
+    private final boolean life;    // B3/S23, which some engines hand-code
+
+    public final int next[] = new int[18];
+    private final long born[] = new long[9];
+    private final long stays[] = new long[9];
+
+    public static final int maxStates = 128;   // what ByteEngine can store
+
+    // Parse a rule of the form B<digits>/S<digits>, optionally followed
+    // by /C<states>.  Case, the order of the parts and the slashes are all
+    // optional.  Throws IllegalArgumentException if the string is not a
+    // rule.
+    //
+    public static Rule parse(String s) {
+        int b = 0, sv = 0, c = 0;
+        int part = -1;   // 0 after B, 1 after S, 2 after C
+        boolean seenB = false, seenS = false, seenC = false;
+        for (char ch : s.trim().toUpperCase().toCharArray()) {
+            if (ch == 'B' && !seenB) {
+                part = 0;
+                seenB = true;
+            } else if (ch == 'S' && !seenS) {
+                part = 1;
+                seenS = true;
+            } else if (ch == 'C' && !seenC) {
+                part = 2;
+                seenC = true;
+            } else if (ch == '/' && part >= 0) {
+                continue;
+            } else if (ch >= '0' && ch <= '9' && part == 2) {
+                c = Math.min(10*c + (ch - '0'), maxStates + 1);
+            } else if (ch >= '0' && ch <= '8' && part >= 0) {
+                if (part == 0) {
+                    b |= 1 << (ch - '0');
+                } else {
+                    sv |= 1 << (ch - '0');
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid rule: " + s);
+            }
+        }
+        if (!seenB || !seenS) {
+            throw new IllegalArgumentException("Invalid rule: " + s);
+        }
+        if (!seenC) {
+            c = 2;
+        } else if (c < 2 || c > maxStates) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid rule: %s (needs 2 to %d states)", s, maxStates));
+        }
+        return new Rule(b, sv, c);
+    }
+
+    // 1 if a dead (0) or live (1) cell with n live neighbours is alive in
+    // the next generation, else 0.
+    //
+    public int next(int state, int n) {
+        return next[2*n + state];
+    }
+
+    // True for rules (with B0) under which empty space comes to life,
+    // which the engines that only look at live cells cannot follow.
+    //
+    public boolean bornFromNothing() {
+        return (births & 1) != 0;
+    }
+
+    public boolean isLife() {
+        return life;
+    }
+
+    // Number of states, counting dead and alive.
+    //
+    public int states() {
+        return states;
+    }
+
+    // The rule applied bitwise: each bit of the result is the next state
+    // of a cell whose state is the same bit of x and whose neighbour count
+    // has bits s3 s2 s1 s0 in that position (s3 being set only for a
+    // count of 8).
+    //
+    public long nextBits(long x, long s0, long s1, long s2, long s3) {
+        return (x & select(stays, s0, s1, s2, s3))
+             | (~x & select(born, s0, s1, s2, s3));
+    }
+
+    // Entry s3 s2 s1 s0 of the table t, in each bit position: a tree of
+    // multiplexers, one level per bit of the count.
+    //
+    private static long select(long[] t, long s0, long s1, long s2, long s3) {
+        long a = t[0] ^ ((t[0] ^ t[1]) & s0);
+        long b = t[2] ^ ((t[2] ^ t[3]) & s0);
+        long c = t[4] ^ ((t[4] ^ t[5]) & s0);
+        long d = t[6] ^ ((t[6] ^ t[7]) & s0);
+        a ^= (a ^ b) & s1;
+        c ^= (c ^ d) & s1;
+        a ^= (a ^ c) & s2;
+        // A count of 8 has s2 s1 s0 = 0, so a holds t[0] where s3 is set.
+        return a ^ ((a ^ t[8]) & s3);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("B");
+        for (int n = 0; n <= 8; n++) {
+            if ((births & (1 << n)) != 0) {
+                sb.append(n);
+            }
+        }
+        sb.append("/S");
+        for (int n = 0; n <= 8; n++) {
+            if ((survivals & (1 << n)) != 0) {
+                sb.append(n);
+            }
+        }
+        if (states > 2) {
+            sb.append("/C").append(states);
+        }
+        return sb.toString();
+    }
+
+    // Constructor
+    //
+    private Rule(int b, int s, int c) {
+        births = b;
+        survivals = s;
+        states = c;
+        life = (b == 1 << 3) && (s == (1 << 2 | 1 << 3)) && (c == 2);
+        for (int n = 0; n <= 8; n++) {
+            next[2*n] = (births >>> n) & 1;
+            next[2*n + 1] = (survivals >>> n) & 1;
+            born[n] = -(long) next[2*n];
+            stays[n] = -(long) next[2*n + 1];
+        }
+    }
+}
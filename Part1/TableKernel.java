@@ -0,0 +1,104 @@
+/*
+    TableKernel.java
+
+    RowKernel that looks up the next generation of 2x2 blocks of cells in
+    a precomputed table, instead of summing neighbours cell by cell.
+ */
+
+// The next generation of a 2x2 block depends only on the 4x4 square
+// around it, so all 2^16 such squares are worked out once, for the rule
+// the kernel is built for.  The square is indexed column by column:
+// column c of the square (c = 0 .. 3, left to right) is bits 4c .. 4c+3
+// of the index, with its top cell in the lowest bit.  The table entry holds the block's
+// top left, top right, bottom left and bottom right cells in bits 0 .. 3.
+//
+// Moving two cells to the right keeps two of the four columns, so the
+// index is rolled along the row: shift out the two columns on the left
+// and add the two new ones on the right, eight loads for four cells.
+//
+class TableKernel implements RowKernel {
+    private final byte table[];
+
+    private static byte[] buildTable(Rule rule) {
+        byte t[] = new byte[1 << 16];
+        for (int idx = 0; idx < t.length; idx++) {
+            int out = 0;
+            for (int r = 1; r <= 2; r++) {
+                for (int c = 1; c <= 2; c++) {
+                    int sum = 0;
+                    for (int dr = -1; dr <= 1; dr++) {
+                        for (int dc = -1; dc <= 1; dc++) {
+                            if (dr != 0 || dc != 0) {
+                                sum += cell(idx, r+dr, c+dc);
+                            }
+                        }
+                    }
+                    out |= rule.next(cell(idx, r, c), sum) << ((r-1)*2 + c-1);
+                }
+            }
+            t[idx] = (byte) out;
+        }
+        return t;
+    }
+
+    // Cell in row r, column c of the square with index idx.
+    //
+    private static int cell(int idx, int r, int c) {
+        return (idx >>> (c*4 + r)) & 1;
+    }
+
+    public int height() {
+        return 2;
+    }
+
+    public int step(int[] B, int[] A, int k, int n, int stride, int h) {
+        int k0 = k - stride;        // the four rows of the square
+        int k1 = k;
+        int k2 = k + stride;
+        int k3 = (h == 2) ? k + 2*stride : k2;
+            // With one row to compute, the square's last row only affects
+            // the bottom of the block, which is thrown away; and the row
+            // below it may not exist.
+        int idx = column(B, k0, k1, k2, k3, -1) | column(B, k0, k1, k2, k3, 0) << 4;
+        int d = 0;
+        int x = 0;
+        for (; x + 1 < n; x += 2) {
+            idx |= column(B, k0, k1, k2, k3, x+1) << 8
+                 | column(B, k0, k1, k2, k3, x+2) << 12;
+            int out = table[idx];
+            A[k1+x] = out & 1;
+            A[k1+x+1] = (out >>> 1) & 1;
+            d |= (A[k1+x] ^ B[k1+x]) | (A[k1+x+1] ^ B[k1+x+1]);
+            if (h == 2) {
+                A[k2+x] = (out >>> 2) & 1;
+                A[k2+x+1] = out >>> 3;
+                d |= (A[k2+x] ^ B[k2+x]) | (A[k2+x+1] ^ B[k2+x+1]);
+            }
+            idx >>>= 8;
+        }
+        if (x < n) {
+            // An odd run leaves a last column, whose block sticks out past
+            // the run; its right-hand column is left empty and discarded.
+            int out = table[idx | column(B, k0, k1, k2, k3, x+1) << 8];
+            A[k1+x] = out & 1;
+            d |= A[k1+x] ^ B[k1+x];
+            if (h == 2) {
+                A[k2+x] = (out >>> 2) & 1;
+                d |= A[k2+x] ^ B[k2+x];
+            }
+        }
+        return d;
+    }
+
+    // Column x of the square whose rows start at k0 .. k3.
+    //
+    private static int column(int[] B, int k0, int k1, int k2, int k3, int x) {
+        return B[k0+x] | B[k1+x] << 1 | B[k2+x] << 2 | B[k3+x] << 3;
+    }
+
+    // Constructor
+    //
+    public TableKernel(Rule rule) {
+        table = buildTable(rule);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+    TileActivity.java
+
+    Bookkeeping that lets an engine skip the parts of the board that
+    have settled down.
+ */
+
+// The board is divided into square tiles of `size' cells on a side (the
+// last row and column of tiles may be smaller).  While a generation is
+// computed, an engine calls markChanged for every tile in which some
+// cell changed.  advance, called from swap, then works out which tiles
+// need computing in the next generation: those with a changed tile among
+// themselves or their eight neighbours (the tiles wrap around, like the
+// board).  Every other tile is certain to come out exactly as it is now.
+//
+// markChanged only ever raises a flag, so it is safe for several threads
+// to compute parts of one tile.
+//
+class TileActivity {
+    public final int size;       // cells on a side of a tile
+    public final int tileRows;   // number of rows of tiles
+    public final int tileCols;   // number of columns of tiles
+
+    private final byte changed[];    // [tile row * tileCols + tile col]
+    private final boolean active[];  // computed in the current generation
+    private final int activeInRow[]; // number of active tiles in each tile row
+
+    public boolean isActive(int tr, int tc) {
+        return active[tr*tileCols + tc];
+    }
+
+    public void markChanged(int tr, int tc) {
+        // Test first: the flags of tiles computed by different threads
+        // share cache lines, and reading one does not take the line away
+        // from the other threads the way writing it does.
+        if (changed[tr*tileCols + tc] == 0) {
+            changed[tr*tileCols + tc] = 1;
+        }
+    }
+
+    // Number of active tiles in tile row tr.
+    //
+    public int activeTiles(int tr) {
+        return activeInRow[tr];
+    }
+
+    // Decide which tiles are active in the next generation.
+    //
+    public void advance() {
+        java.util.Arrays.fill(active, false);
+        for (int tr = 0; tr < tileRows; tr++) {
+            for (int tc = 0; tc < tileCols; tc++) {
+                if (changed[tr*tileCols + tc] != 0) {
+                    activate(tr, tc);
+                }
+            }
+        }
+        java.util.Arrays.fill(changed, (byte) 0);
+        count();
+    }
+
+    // Make sure the tile holding cell (i, j) is recomputed, e.g. after the
+    // cell was edited.
+    //
+    public void touch(int i, int j) {
+        activate(i / size, j / size);
+        count();
+    }
+
+    // Recompute every tile.
+    //
+    public void all() {
+        java.util.Arrays.fill(active, true);
+        count();
+    }
+
+    // Activate tile (tr, tc) and its neighbours.
+    //
+    private void activate(int tr, int tc) {
+        for (int dr = -1; dr <= 1; dr++) {
+            int r = (tr + dr + tileRows) % tileRows;
+            for (int dc = -1; dc <= 1; dc++) {
+                active[r*tileCols + (tc + dc + tileCols) % tileCols] = true;
+            }
+        }
+    }
+
+    private void count() {
+        for (int tr = 0; tr < tileRows; tr++) {
+            int a = 0;
+            for (int tc = 0; tc < tileCols; tc++) {
+                if (active[tr*tileCols + tc]) {
+                    a++;
+                }
+            }
+            activeInRow[tr] = a;
+        }
+    }
+
+    // Constructor
+    //
+    public TileActivity(int rows, int cols, int S) {
+        size = S;
+        tileRows = (rows + size - 1) / size;
+        tileCols = (cols + size - 1) / size;
+        changed = new byte[tileRows * tileCols];
+        active = new boolean[tileRows * tileCols];
+        activeInRow = new int[tileRows];
+        all();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    AllocCheck.java
+
+    Checks that the Delegator's generation loop allocates nothing once
+    it is running.  Usage:
+
+        java AllocCheck [threads [size]]
+
+    Runs a headless random board of size x size cells with the default
+    engine, lets it warm up, then measures the bytes allocated by the
+    Delegator's thread and the Workers' over a number of generations, as
+    reported by the JVM for each thread.  Exits with status 1 if they
+    come to more than the headless timestamp the board prints every
+    tenth generation.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class AllocCheck {
+    private static final long warmup = 2000;      // generations, for the JIT
+    private static final long measured = 20000;
+    private static final double allowed = 16;     // bytes per generation
+
+    private static long allocated(com.sun.management.ThreadMXBean mx, List<Thread> ts) {
+        long total = 0;
+        for (Thread t : ts) {
+            total += mx.getThreadAllocatedBytes(t.getId());
+        }
+        return total;
+    }
+
+    private static void waitFor(Life.Trial t, long rounds) throws InterruptedException {
+        while (t.getRounds() < rounds) {
+            Thread.sleep(10);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 256;
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!mx.isThreadAllocatedMemorySupported()) {
+            System.out.println("per-thread allocation not supported: nothing checked");
+            return;
+        }
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        List<int[]> soup = new ArrayList<>();
+        Random r = new Random(1);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (r.nextBoolean()) {
+                    soup.add(new int[] {j, i});
+                }
+            }
+        }
+        Life.Trial t = new Life.Trial(size, soup.toArray(new int[0][]),
+                                      threads, threads * 4, 0, false);
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+
+        t.start();
+        waitFor(t, warmup);
+        List<Thread> ts = t.getThreads();
+        long before = allocated(mx, ts);
+        long from = t.getRounds();
+        waitFor(t, from + measured);
+        long bytes = allocated(mx, ts) - before;
+        long gens = t.getRounds() - from;
+        t.shutdown();
+
+        double perGen = (double) bytes / gens;
+        System.err.printf("%d threads: %d bytes in %d generations, %.2f per generation\n",
+                          ts.size(), bytes, gens, perGen);
+        System.exit(perGen > allowed ? 1 : 0);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+    ArrayEngine.java
+
+    The original LifeBoard representation: one int per cell, with the
+    rule applied by summing the eight neighbours of each cell and looking
+    the sum up in the Rule's table.
+ */
+
+// The board is stored in one flat array, row after row, surrounded by a
+// one-cell halo: ghost rows above and below and ghost columns to the
+// left and right hold copies of the cells on the opposite edge.  Every
+// cell therefore has its eight neighbours at fixed offsets, and the
+// inner loop never has to wrap an index around the torus.  The halo of
+// the current generation is refreshed whenever it may have gone stale
+// (after swap and after edits to edge cells).
+//
+// Cells are also grouped into tiles (see TileActivity), and a tile is
+// only computed if something in or around it changed in the previous
+// generation; otherwise the scratch board already holds its next
+// generation, which is the same as its current one.
+//
+// The cells of a tile row are computed by the loop below, one at a
+// time, unless the engine was given a RowKernel to do them all at once.
+// A kernel may take up to height() rows together, as long as they lie in
+// the same Task and the same row of tiles.
+//
+// With a depth of more than one, each pass instead advances the board
+// depth generations (temporal blocking).  The rows of a Task are taken a
+// block of blockSize by blockSize cells at a time: the block and a halo
+// depth cells wide are copied into a small scratch square, which is
+// stepped depth times, one ring of cells narrower each time, and what is
+// left is the block's result.  The halo is computed redundantly by the
+// blocks next to it, but the square stays in cache for all depth
+// generations, where the stripe of a Task would be read from memory once
+// per generation.  Tiles are not skipped in this mode.
+//
+class ArrayEngine implements LifeEngine {
+    private int B[];  // board contents
+    private int A[];  // scratch board
+    private int T[];  // temporary pointer
+
+    private final Coordinator c;
+    private final int rows;    // number of cells down the board
+    private final int cols;    // number of cells across the board
+    private final int stride;  // ints per row, including the halo
+    private final TileActivity tiles;
+    private final Rule rule;
+    private final RowKernel kernel;   // null for the cell-at-a-time loop
+    private final int depth;          // generations per pass
+    private final ThreadLocal<int[][]> squares;
+        // each thread's pair of scratch squares, when depth > 1
+
+    private static final int tileSize = 32;
+    private static final int blockSize = 64;
+
+    // Index in B of cell (i, j).
+    //
+    private int index(int i, int j) {
+        return (i+1)*stride + j+1;
+    }
+
+    public int get(int i, int j) {
+        return B[index(i, j)];
+    }
+
+    public void set(int i, int j, int v) {
+        B[index(i, j)] = v;
+        tiles.touch(i, j);
+        if (i == 0 || i == rows-1 || j == 0 || j == cols-1) {
+            wrap();
+        }
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(B, 0);
+        tiles.all();
+    }
+
+    public long population() {
+        long n = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int k = index(i, 0); k < index(i, cols); k++) {
+                n += B[k];
+            }
+        }
+        return n;
+    }
+
+    public void copyFrom(LifeEngine e, int R, int N) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                B[index(i, j)] = e.get(i, j);
+            }
+        }
+        wrap();
+        tiles.all();
+    }
+
+    public int activeTiles(int i) {
+        return (depth > 1) ? -1 : tiles.activeTiles(i / tiles.size);
+    }
+
+    public int columnAlign() {
+        return tiles.size;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    // Copy the edges of the current generation into its halo.
+    //
+    private void wrap() {
+        System.arraycopy(B, rows*stride, B, 0, stride);
+        System.arraycopy(B, stride, B, (rows+1)*stride, stride);
+        for (int r = 0; r < (rows+2)*stride; r += stride) {
+            B[r] = B[r+cols];
+            B[r+cols+1] = B[r+1];
+        }
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        doGeneration(start, end, 0, cols);
+    }
+
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        if (depth > 1) {
+            for (int i0 = start; i0 < end; i0 += blockSize) {
+                for (int j0 = left; j0 < right; j0 += blockSize) {
+                    doBlock(i0, j0, Math.min(blockSize, end - i0),
+                            Math.min(blockSize, right - j0));
+                }
+            }
+            return;
+        }
+        int next[] = rule.next;
+        int height = (kernel == null) ? 1 : kernel.height();
+        int span;   // rows computed together
+        for (int i = start; i < end; i += span) {
+            int tr = i / tiles.size;
+            span = Math.min(height, Math.min(end, (tr+1) * tiles.size) - i);
+            for (int tc = left / tiles.size; tc * tiles.size < right; tc++) {
+                if (!tiles.isActive(tr, tc)) {
+                    continue;   // nothing near this tile changed last time
+                }
+                int j0 = tc * tiles.size;
+                int j1 = Math.min(right, j0 + tiles.size);
+                int diff = 0;
+                int k = index(i, j0);
+                if (kernel != null) {
+                    // hesitate once for the whole run, as in BitEngine
+                    c.hesitate();
+                    diff = kernel.step(B, A, k, j1 - j0, stride, span);
+                } else {
+                    for (int j = j0; j < j1; j++, k++) {
+
+                        // NOTICE: you are REQUIRED to call hesitate() EVERY TIME
+                        // you update a LifeBoard cell.  The call serves two
+                        // purposes: (1) it checks to see whether you should pause
+                        // or stop; (2) it introduces delay that allows you to
+                        // see the board evolving and that will give you the
+                        // appearance of speedup with additional threads.
+
+                        c.hesitate();
+                        int sum = B[k-stride-1] + B[k-stride] + B[k-stride+1] +
+                                  B[k-1]                      + B[k+1] +
+                                  B[k+stride-1] + B[k+stride] + B[k+stride+1];
+                        A[k] = next[2*sum + B[k]];
+                        diff |= A[k] ^ B[k];
+                    }
+                }
+                if (diff != 0) {
+                    tiles.markChanged(tr, tc);
+                }
+            }
+        }
+    }
+
+    // Advance the h by w block at (i0, j0) depth generations, from B to A.
+    //
+    private void doBlock(int i0, int j0, int h, int w)
+            throws Coordinator.KilledException {
+        int next[] = rule.next;
+        int sq[][] = squares.get();
+        int in[] = sq[0], out[] = sq[1];
+        int ls = blockSize + 2*depth;   // ints per row of a square
+
+        // Copy in the block and its halo, wrapping around the torus.
+        for (int r = 0; r < h + 2*depth; r++) {
+            int k = index(Math.floorMod(i0 - depth + r, rows), 0);
+            int j = Math.floorMod(j0 - depth, cols);
+            for (int x = 0; x < w + 2*depth; x++) {
+                in[r*ls + x] = B[k + j];
+                if (++j == cols) {
+                    j = 0;
+                }
+            }
+        }
+
+        // Step it, losing the outermost ring each generation.
+        for (int g = 1; g <= depth; g++) {
+            for (int r = g; r < h + 2*depth - g; r++) {
+                // hesitate once for the whole run, as in BitEngine
+                c.hesitate();
+                int k = r*ls + g;
+                for (int x = g; x < w + 2*depth - g; x++, k++) {
+                    int sum = in[k-ls-1] + in[k-ls] + in[k-ls+1] +
+                              in[k-1]                + in[k+1] +
+                              in[k+ls-1] + in[k+ls] + in[k+ls+1];
+                    out[k] = next[2*sum + in[k]];
+                }
+            }
+            int t[] = in;  in = out;  out = t;
+        }
+
+        for (int r = 0; r < h; r++) {
+            System.arraycopy(in, (r + depth)*ls + depth, A, index(i0 + r, j0), w);
+        }
+    }
+
+    public void swap() {
+        T = B;  B = A;  A = T;
+        wrap();
+        tiles.advance();
+    }
+
+    // Constructor
+    //
+    public ArrayEngine(int R, int N, Coordinator C) {
+        this(R, N, C, Rule.LIFE, null);
+    }
+
+    public ArrayEngine(int R, int N, Coordinator C, Rule L) {
+        this(R, N, C, L, null);
+    }
+
+    // K, if not null, must have been built for the same rule.
+    //
+    public ArrayEngine(int R, int N, Coordinator C, Rule L, RowKernel K) {
+        this(R, N, C, L, K, 1);
+    }
+
+    // Temporal blocking: D generations per pass.
+    //
+    public ArrayEngine(int R, int N, Coordinator C, Rule L, int D) {
+        this(R, N, C, L, null, D);
+    }
+
+    private ArrayEngine(int R, int N, Coordinator C, Rule L, RowKernel K, int D) {
+        if (D < 1) {
+            throw new IllegalArgumentException("Invalid depth: " + D);
+        }
+        rule = L;
+        kernel = K;
+        depth = D;
+        int area = (blockSize + 2*D) * (blockSize + 2*D);
+        squares = ThreadLocal.withInitial(() -> new int[][] {new int[area], new int[area]});
+        rows = R;
+        cols = N;
+        c = C;
+        stride = cols+2;
+        A = new int[(rows+2)*stride];  // initialized to all 0
+        B = new int[(rows+2)*stride];  // initialized to all 0
+        tiles = new TileActivity(rows, cols, tileSize);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+    Bench.java
+
+    Measures how fast each LifeEngine computes generations, in cells per
+    second, on a single thread with no delay.  Usage:
+
+        java Bench [size [generations [rule]]]
+
+    The vector kernel is included only if it was compiled (see
+    vector/VectorKernel.java) and the JVM was started with
+    --add-modules jdk.incubator.vector.
+ */
+
+import java.util.Random;
+
+class Bench {
+    private static final int warmup = 20;    // untimed generations, for the JIT
+
+    // Time generations passes of e (of e.depth() generations each),
+    // starting from a random board of the given size with about a third
+    // of the cells alive.
+    //
+    private static double cellsPerSecond(LifeEngine e, int size, int generations)
+            throws Coordinator.KilledException {
+        Random r = new Random(254);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                e.set(i, j, r.nextInt(3) == 0 ? 1 : 0);
+            }
+        }
+        for (int g = 0; g < warmup; g++) {
+            e.doGeneration(0, size);
+            e.swap();
+        }
+        long start = System.nanoTime();
+        for (int g = 0; g < generations; g++) {
+            e.doGeneration(0, size);
+            e.swap();
+        }
+        long nanos = System.nanoTime() - start;
+        return (double) size * size * generations * e.depth() / (nanos / 1e9);
+    }
+
+    private static void report(String name, LifeEngine e, int size, int generations)
+            throws Coordinator.KilledException {
+        System.out.printf("%-8s %10.1f million cells/s\n", name,
+                          cellsPerSecond(e, size, generations) / 1e6);
+    }
+
+    public static void main(String[] args) throws Coordinator.KilledException {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int generations = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        Rule rule = (args.length > 2) ? Rule.parse(args[2]) : Rule.LIFE;
+        Coordinator c = new Coordinator(0);   // no pacing
+
+        System.out.println(rule);
+        if (rule.states() > 2) {
+            // Only ByteEngine runs Generations rules.
+            report("bytes", new ByteEngine(size, size, c, rule), size, generations);
+            return;
+        }
+        report("scalar", new ArrayEngine(size, size, c, rule), size, generations);
+        report("table", new ArrayEngine(size, size, c, rule, new TableKernel(rule)),
+               size, generations);
+        report("depth 4", new ArrayEngine(size, size, c, rule, 4), size, generations);
+        RowKernel k = RowKernel.vector(rule);
+        if (k != null) {
+            report("vector", new ArrayEngine(size, size, c, rule, k),
+                   size, generations);
+        } else {
+            System.out.println("vector   not available");
+        }
+        report("bytes", new ByteEngine(size, size, c, rule), size, generations);
+        report("packed", new BitEngine(size, size, c, rule), size, generations);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+    ByteEngine.java
+
+    One byte per cell, for rules of the Generations family (such as
+    Brian's Brain, B2/S/C3), in which a cell that dies does not become
+    empty straight away but passes through a number of dying states,
+    during which it neither counts as a neighbour nor can be born again.
+    Plain two-state rules work too, in a quarter of ArrayEngine's memory.
+ */
+
+// The layout is ArrayEngine's: one flat array, row after row, inside a
+// one-cell halo that copies the opposite edge, and the same tiles of
+// TileActivity to skip settled regions.
+//
+// States are stored so that a cell counts as a neighbour exactly when its
+// low bit is set: dead is 0, alive is 1, and dying state s (s = 2 .. C-1
+// for a rule with C states) is 2*(s-1).  The neighbour count is then a
+// sum of eight masked loads, and the next state one lookup in a table
+// indexed by the stored state and the count.
+//
+class ByteEngine implements LifeEngine {
+    private byte B[];  // board contents
+    private byte A[];  // scratch board
+    private byte T[];  // temporary pointer
+
+    private final Coordinator c;
+    private final int rows;    // number of cells down the board
+    private final int cols;    // number of cells across the board
+    private final int stride;  // bytes per row, including the halo
+    private final int states;  // states of the rule, including dead and alive
+    private final byte next[]; // [stored state << 4 | live neighbours]
+    private final TileActivity tiles;
+
+    private static final int tileSize = 32;
+
+    // Stored form of state s, and back.
+    //
+    private static int encode(int s) {
+        return (s <= 1) ? s : 2*(s-1);
+    }
+
+    private static int decode(int v) {
+        return (v <= 1) ? v : v/2 + 1;
+    }
+
+    // Index in B of cell (i, j).
+    //
+    private int index(int i, int j) {
+        return (i+1)*stride + j+1;
+    }
+
+    public int get(int i, int j) {
+        return decode(B[index(i, j)] & 0xff);
+    }
+
+    public void set(int i, int j, int v) {
+        B[index(i, j)] = (byte) encode(v);
+        tiles.touch(i, j);
+        if (i == 0 || i == rows-1 || j == 0 || j == cols-1) {
+            wrap();
+        }
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(B, (byte) 0);
+        tiles.all();
+    }
+
+    public int states() {
+        return states;
+    }
+
+    public int activeTiles(int i) {
+        return tiles.activeTiles(i / tiles.size);
+    }
+
+    public int columnAlign() {
+        return tiles.size;
+    }
+
+    // Copy the edges of the current generation into its halo.
+    //
+    private void wrap() {
+        System.arraycopy(B, rows*stride, B, 0, stride);
+        System.arraycopy(B, stride, B, (rows+1)*stride, stride);
+        for (int r = 0; r < (rows+2)*stride; r += stride) {
+            B[r] = B[r+cols];
+            B[r+cols+1] = B[r+1];
+        }
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        doGeneration(start, end, 0, cols);
+    }
+
+    public void doGeneration(int start, int end, int left, int right)
+            throws Coordinator.KilledException {
+        for (int i = start; i < end; i++) {
+            int tr = i / tiles.size;
+            for (int tc = left / tiles.size; tc * tiles.size < right; tc++) {
+                if (!tiles.isActive(tr, tc)) {
+                    continue;   // nothing near this tile changed last time
+                }
+                int j0 = tc * tiles.size;
+                int j1 = Math.min(right, j0 + tiles.size);
+                // hesitate once for the whole run, as in BitEngine
+                c.hesitate();
+                int diff = 0;
+                int k = index(i, j0);
+                for (int j = j0; j < j1; j++, k++) {
+                    int n = (B[k-stride-1] & 1) + (B[k-stride] & 1) + (B[k-stride+1] & 1)
+                          + (B[k-1] & 1)                            + (B[k+1] & 1)
+                          + (B[k+stride-1] & 1) + (B[k+stride] & 1) + (B[k+stride+1] & 1);
+                    A[k] = next[(B[k] & 0xff) << 4 | n];
+                    diff |= A[k] ^ B[k];
+                }
+                if (diff != 0) {
+                    tiles.markChanged(tr, tc);
+                }
+            }
+        }
+    }
+
+    public void swap() {
+        T = B;  B = A;  A = T;
+        wrap();
+        tiles.advance();
+    }
+
+    // Constructor
+    //
+    public ByteEngine(int R, int N, Coordinator C, Rule L) {
+        rows = R;
+        cols = N;
+        c = C;
+        states = L.states();
+        stride = cols+2;
+        A = new byte[(rows+2)*stride];  // initialized to all 0
+        B = new byte[(rows+2)*stride];  // initialized to all 0
+        tiles = new TileActivity(rows, cols, tileSize);
+
+        next = new byte[(encode(states-1) + 1) << 4];
+        for (int s = 0; s < states; s++) {
+            for (int n = 0; n <= 8; n++) {
+                int t;
+                if (s == 0) {
+                    t = L.next(0, n);
+                } else if (s == 1) {
+                    t = (L.next(1, n) != 0) ? 1 : (states > 2) ? 2 : 0;
+                } else {
+                    t = (s+1) % states;
+                }
+                next[encode(s) << 4 | n] = (byte) encode(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+    HashLife.java
+
+    Gosper's HashLife: the world as a quadtree in which identical
+    subtrees are shared, and the future of each subtree is computed once
+    and remembered.  Repetitive patterns then cost time roughly in
+    proportion to the logarithm of the number of generations, so a
+    pattern can be fast-forwarded millions of generations at once.
+
+    Unlike the LifeBoard, HashLife runs on an unbounded plane, not a
+    torus; results are folded back onto the board by toCells.  Empty
+    space must stay empty, so rules with B0 are not allowed.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Every node stands for a square of 2^level by 2^level cells; level 0
+// nodes are single cells.  Nodes are canonical: there is only ever one
+// node with a given four children, so equal squares are the same object
+// and a node's memoized future serves every place the square occurs.
+//
+// step(n, j) is the centre half of n advanced 2^j generations, which is
+// fully determined by n as long as j <= level-2.  The root is centred
+// on the origin, and is padded with empty space as needed so that
+// nothing escapes it.
+//
+// The canonical table and the memoized results can grow without limit,
+// so once the table holds more than maxNodes nodes, everything not
+// reachable from the root is dropped, along with every memoized result.
+//
+class HashLife {
+    static final class Node {
+        final int level;
+        final Node nw, ne, sw, se;   // quadrants; null for single cells
+        final long population;
+        final int hash;
+
+        Node next;          // chain in the canonical table
+        Node result;        // memoized step(this, resultStep)
+        int resultStep;
+
+        Node(int l, Node a, Node b, Node c, Node d, long pop, int h) {
+            level = l;
+            nw = a;  ne = b;  sw = c;  se = d;
+            population = pop;
+            hash = h;
+        }
+    }
+
+    private static final Node DEAD = new Node(0, null, null, null, null, 0, 0);
+    private static final Node ALIVE = new Node(0, null, null, null, null, 1, 1);
+
+    private Node table[] = new Node[1 << 16];
+    private int size = 0;          // nodes in table
+    private final int maxNodes;    // table size that triggers a collection
+    private final List<Node> empty = new ArrayList<>();   // empty node of each level
+
+    private final Rule rule;
+    private Node root;
+    private long generation = 0;
+
+    // Canonical node with the given quadrants.
+    //
+    private Node node(Node nw, Node ne, Node sw, Node se) {
+        int h = nw.hash * 0x3c6ef372 + ne.hash * 0x1b873593
+              + sw.hash * 0x5bd1e995 + se.hash;
+        h ^= h >>> 16;
+        int b = h & (table.length - 1);
+        for (Node n = table[b]; n != null; n = n.next) {
+            if (n.nw == nw && n.ne == ne && n.sw == sw && n.se == se) {
+                return n;
+            }
+        }
+        Node n = new Node(nw.level + 1, nw, ne, sw, se,
+                          nw.population + ne.population
+                          + sw.population + se.population, h);
+        insert(n);
+        return n;
+    }
+
+    private void insert(Node n) {
+        if (size >= table.length * 3 / 4) {
+            rehash(table.length * 2);
+        }
+        int b = n.hash & (table.length - 1);
+        n.next = table[b];
+        table[b] = n;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        Node old[] = table;
+        table = new Node[capacity];
+        for (Node chain : old) {
+            while (chain != null) {
+                Node n = chain;
+                chain = chain.next;
+                int b = n.hash & (capacity - 1);
+                n.next = table[b];
+                table[b] = n;
+            }
+        }
+    }
+
+    // Empty node of level l.
+    //
+    private Node empty(int l) {
+        while (empty.size() <= l) {
+            if (empty.isEmpty()) {
+                empty.add(DEAD);
+            } else {
+                Node e = empty.get(empty.size() - 1);
+                empty.add(node(e, e, e, e));
+            }
+        }
+        return empty.get(l);
+    }
+
+    // n with cell (x, y) set, where (0, 0) is the top left cell of n's
+    // south-east quadrant (i.e., the cell just below and right of centre).
+    //
+    private Node setCell(Node n, int x, int y) {
+        if (n.level == 1) {
+            Node nw = n.nw, ne = n.ne, sw = n.sw, se = n.se;
+            if (y < 0) {
+                if (x < 0) nw = ALIVE; else ne = ALIVE;
+            } else {
+                if (x < 0) sw = ALIVE; else se = ALIVE;
+            }
+            return node(nw, ne, sw, se);
+        }
+        int d = 1 << (n.level - 2);   // distance to quadrant centres
+        if (y < 0) {
+            if (x < 0) {
+                return node(setCell(n.nw, x+d, y+d), n.ne, n.sw, n.se);
+            }
+            return node(n.nw, setCell(n.ne, x-d, y+d), n.sw, n.se);
+        }
+        if (x < 0) {
+            return node(n.nw, n.ne, setCell(n.sw, x+d, y-d), n.se);
+        }
+        return node(n.nw, n.ne, n.sw, setCell(n.se, x-d, y-d));
+    }
+
+    // n padded with empty space to twice the size, still centred.
+    //
+    private Node expand(Node n) {
+        Node e = empty(n.level - 1);
+        return node(node(e, e, e, n.nw), node(e, e, n.ne, e),
+                    node(e, n.sw, e, e), node(n.se, e, e, e));
+    }
+
+    // Centre half of n, not advanced in time.
+    //
+    private Node center(Node n) {
+        return node(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+    }
+
+    // State of cell (x, y) of a level 2 node, for 0 <= x, y < 4.
+    //
+    private static int cell(Node n, int x, int y) {
+        Node q = (y < 2) ? ((x < 2) ? n.nw : n.ne) : ((x < 2) ? n.sw : n.se);
+        Node c = ((y & 1) == 0) ? (((x & 1) == 0) ? q.nw : q.ne)
+                                : (((x & 1) == 0) ? q.sw : q.se);
+        return (int) c.population;
+    }
+
+    // Next generation of cell (x, y) of a level 2 node, for 1 <= x, y < 3.
+    //
+    private Node nextCell(Node n, int x, int y) {
+        int sum = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx != 0 || dy != 0) {
+                    sum += cell(n, x+dx, y+dy);
+                }
+            }
+        }
+        return (rule.next(cell(n, x, y), sum) != 0) ? ALIVE : DEAD;
+    }
+
+    // Centre half of n advanced 2^j generations; requires j <= n.level-2.
+    //
+    private Node step(Node n, int j) {
+        if (n.population == 0) {
+            return empty(n.level - 1);
+        }
+        if (n.result != null && n.resultStep == j) {
+            return n.result;
+        }
+        Node r;
+        if (n.level == 2) {
+            r = node(nextCell(n, 1, 1), nextCell(n, 2, 1),
+                     nextCell(n, 1, 2), nextCell(n, 2, 2));
+        } else {
+            // The nine overlapping subsquares of half the size.
+            Node n00 = n.nw;
+            Node n01 = node(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw);
+            Node n02 = n.ne;
+            Node n10 = node(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne);
+            Node n11 = center(n);
+            Node n12 = node(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+            Node n20 = n.sw;
+            Node n21 = node(n.sw.ne, n.se.nw, n.sw.se, n.se.sw);
+            Node n22 = n.se;
+            int k;
+            if (j == n.level - 2) {
+                // Advance the subsquares half the way, then combine them
+                // and advance the other half.
+                k = j - 1;
+                n00 = step(n00, k);  n01 = step(n01, k);  n02 = step(n02, k);
+                n10 = step(n10, k);  n11 = step(n11, k);  n12 = step(n12, k);
+                n20 = step(n20, k);  n21 = step(n21, k);  n22 = step(n22, k);
+            } else {
+                // Less than the full distance: take the centres of the
+                // subsquares without advancing, and do it all on the way
+                // back up.
+                k = j;
+                n00 = center(n00);  n01 = center(n01);  n02 = center(n02);
+                n10 = center(n10);  n11 = center(n11);  n12 = center(n12);
+                n20 = center(n20);  n21 = center(n21);  n22 = center(n22);
+            }
+            r = node(step(node(n00, n01, n10, n11), k),
+                     step(node(n01, n02, n11, n12), k),
+                     step(node(n10, n11, n20, n21), k),
+                     step(node(n11, n12, n21, n22), k));
+        }
+        n.result = r;
+        n.resultStep = j;
+        return r;
+    }
+
+    // Advance the world 2^k generations.
+    //
+    public void advance(int k) {
+        // Pad until the pattern sits in the middle quarter of the root and
+        // the root is big enough to step 2^k at once; the pattern then
+        // cannot grow out of the centre half that step returns.
+        while (root.level < k + 3
+               || root.nw.se.se.population + root.ne.sw.sw.population
+                  + root.sw.ne.ne.population + root.se.nw.nw.population
+                  != root.population) {
+            root = expand(root);
+        }
+        root = step(root, k);
+        generation += 1L << k;
+        if (size > maxNodes) {
+            collect();
+        }
+    }
+
+    // Advance the world to generation target (if it is not already past it).
+    //
+    public void advanceTo(long target) {
+        long todo = target - generation;
+        for (int k = 0; todo > 0; k++, todo >>>= 1) {
+            if ((todo & 1) != 0) {
+                advance(k);
+            }
+        }
+    }
+
+    // Drop every node that is not part of the current world, and every
+    // memoized result.
+    //
+    private void collect() {
+        Node old[] = table;
+        table = new Node[old.length];
+        size = 0;
+        for (Node chain : old) {
+            for (Node n = chain; n != null; n = n.next) {
+                n.result = null;
+            }
+        }
+        List<Node> keep = new ArrayList<>(empty);
+        keep.add(root);
+        for (Node n : keep) {
+            reinsert(n);
+        }
+    }
+
+    private void reinsert(Node n) {
+        if (n.level == 0) {
+            return;
+        }
+        int b = n.hash & (table.length - 1);
+        for (Node m = table[b]; m != null; m = m.next) {
+            if (m == n) {
+                return;     // already there, and so is everything below it
+            }
+        }
+        reinsert(n.nw);  reinsert(n.ne);  reinsert(n.sw);  reinsert(n.se);
+        insert(n);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return root.population;
+    }
+
+    // The live cells, on the plane, as {x, y} pairs (x across, y down,
+    // as in LifeBoard.getPoints).  A pattern can travel beyond the range
+    // of an int in enough generations; the cells out there are left out.
+    //
+    public int[][] toCells() {
+        return toCells(0, 0);
+    }
+
+    // The live cells, folded onto a rows by cols torus (or not, if both
+    // are 0).  Cells that land on the same spot are reported once for each.
+    //
+    public int[][] toCells(int rows, int cols) {
+        List<int[]> points = new ArrayList<>();
+        long half = 1L << (root.level - 1);   // level grows past 32 with -g 2^30 and up
+        collectPoints(root, -half, -half, rows, cols, points);
+        return points.toArray(new int[0][]);
+    }
+
+    private void collectPoints(Node n, long x, long y, int rows, int cols,
+                               List<int[]> points) {
+        if (n.population == 0) {
+            return;
+        }
+        long size = 1L << n.level;
+        if (cols == 0 && (x + size <= Integer.MIN_VALUE || x > Integer.MAX_VALUE
+                          || y + size <= Integer.MIN_VALUE || y > Integer.MAX_VALUE)) {
+            return;     // wholly beyond an int (see toCells)
+        }
+        if (n.level == 0) {
+            if (cols > 0) {
+                x = Math.floorMod(x, (long) cols);
+                y = Math.floorMod(y, (long) rows);
+            }
+            points.add(new int[] {(int) x, (int) y});
+            return;
+        }
+        long d = 1L << (n.level - 1);
+        collectPoints(n.nw, x, y, rows, cols, points);
+        collectPoints(n.ne, x+d, y, rows, cols, points);
+        collectPoints(n.sw, x, y+d, rows, cols, points);
+        collectPoints(n.se, x+d, y+d, rows, cols, points);
+    }
+
+    // Constructor.  The live cells are {x, y} pairs, x across and y down
+    // (see LifeBoard.getCells).
+    //
+    public HashLife(int cells[][], int maxNodes, Rule rule) {
+        if (rule.bornFromNothing()) {
+            throw new IllegalArgumentException("HashLife cannot run " + rule);
+        }
+        this.rule = rule;
+        this.maxNodes = maxNodes;
+        int extent = 1;
+        for (int p[] : cells) {
+            extent = Math.max(extent, Math.max(Math.abs(p[0]), Math.abs(p[1])) + 1);
+        }
+        int level = 3;
+        while ((1 << (level - 1)) < extent) {
+            level++;
+        }
+        root = empty(level);
+        for (int p[] : cells) {
+            root = setCell(root, p[0], p[1]);
+        }
+    }
+}
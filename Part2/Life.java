@@ -18,25 +18,49 @@ import javax.swing.*;
 import java.lang.Thread.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.io.*;
 
 public class Life {
-    private static final int n = 100;    // number of cells on a side
-    private static int pauseIterations = -(500000000/n/n);
-        // nanoseconds per dot for a delay of about a half a second
+    private static final int defaultSize = 100; // cells on a side unless -n/-w/-h given
+    private static final long defaultFrame = 500000000;   // ns: half a second
+    private static int rows = defaultSize;      // board height
+    private static int cols = defaultSize;      // board width
+    private static long frameNanos = -1;
+        // time per generation (-f), 0 for as fast as possible; -1 until
+        // set, for the default of half a second
+    private static int legacySpin = 0;           // -s or s:, per cell, if given
     private static int numThreads = 1;
     private static int numTasks = 10; 		// default number of tasks is 10.
     private static boolean headless = false;    // don't create GUI
     private static boolean glider = false;      // create initial glider
+    private static Rule rule = null;            // set by --rule or rule:, else Conway's
+    private static int depth = 1;               // generations per pass (--depth)
+    private static EngineFactory engine = (R, N, C) -> new ArrayEngine(R, N, C, rule, depth);
+        // board storage
+    private static String engineOption = null;  // option that chose the engine, if any
+    private static boolean dataflow = false;    // no barrier between generations (--dataflow)
+    private static int forkJoin = 0;            // cells per ForkJoin leaf, if --forkjoin
+    private static boolean virtual = false;     // a virtual thread per task (--virtual)
+    private static String mapFile = null;       // backing file for --offheap
+    private static long target = 0;             // generation to fast-forward to (-g)
+    private static final int maxDepth = 32;     // beyond which the halo costs more than it saves
+    private static final int hashLifeNodes = 1 << 20;
+        // HashLife node table size at which it discards its memoized results
     private static List<Point> shape = null;	// used to represent a custom shape specified by the user in a config file.
 
 
     // Helper method to create the UI. 
     private UI buildUI(RootPaneContainer pane, int numTasks, List<Point> shape) {
-        return new UI(n, pane, pauseIterations, headless, glider, numThreads, numTasks, shape);
+        return new UI(rows, cols, pane, frameNanos, headless, glider, engine, numThreads, numTasks, shape);
     }
 
     // Print error message and exit.
@@ -46,6 +70,91 @@ public class Life {
         System.exit(-1);
     }
 
+    // EngineFactory for --offheap and --map.
+    //
+    private static LifeEngine offHeapEngine(int rows, int cols, Coordinator c) {
+        try {
+            return new OffHeapEngine(rows, cols, c, rule, mapFile);
+        } catch (java.io.IOException e) {
+            die(String.format("Cannot map board: %s\n", e.getMessage()));
+            return null;
+        }
+    }
+
+    // EngineFactory for --vector.  Falls back to the ordinary loop if the
+    // vector kernel is not available.
+    //
+    private static LifeEngine vectorEngine(int rows, int cols, Coordinator c) {
+        RowKernel k = RowKernel.vector(rule);
+        if (k == null) {
+            System.err.print("Vector API not available; using the scalar loop\n");
+        }
+        return new ArrayEngine(rows, cols, c, rule, k);
+    }
+
+    // True if the board is run by a Dataflow, with no barrier between
+    // generations.
+    //
+    public static boolean isDataflow() {
+        return dataflow;
+    }
+
+    // Largest block, in cells, that a ForkJoin task computes without
+    // splitting it further; 0 unless --forkjoin was given.
+    //
+    public static int getForkJoin() {
+        return forkJoin;
+    }
+
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    // The rule the board runs.
+    //
+    public static Rule getRule() {
+        return rule;
+    }
+
+    // Fast-forward the initial board to generation target with HashLife.
+    // A headless run just reports the population there and exits;
+    // otherwise the result is loaded into the board for display, and Run
+    // carries on from it.  HashLife works on an unbounded plane, so the
+    // result differs from stepping the board itself once the pattern
+    // wraps around the edges (unless the board is --unbounded too).
+    //
+    private static void fastForward(LifeBoard lb) {
+        HashLife h = new HashLife(lb.getCells(), hashLifeNodes, rule);
+        h.advanceTo(target);
+        if (headless) {
+            System.out.printf("generation %d: population %d\n",
+                              h.getGeneration(), h.getPopulation());
+            System.exit(0);
+        }
+        if ("--unbounded".equals(engineOption)) {
+            int cells[][] = h.toCells();
+            if (cells.length < h.getPopulation()) {
+                System.err.printf("%d cells are out of range, and left out\n",
+                                  h.getPopulation() - cells.length);
+            }
+            lb.load(cells, h.getGeneration());
+        } else {
+            lb.load(h.toCells(lb.rows, lb.cols), h.getGeneration());
+        }
+    }
+
+    // A frame time in milliseconds, as nanoseconds; -1 if it is not one.
+    //
+    static long parseFrame(String s) {
+        try {
+            double ms = Double.parseDouble(s.trim());
+            if (ms >= 0 && ms < Long.MAX_VALUE / 1e6) {
+                return (long) (ms * 1e6);
+            }
+        } catch (NumberFormatException e) { }
+        return -1;
+    }
+
     // Examine command-line arguments for non-default parameters.
     //
     private static void parseArgs(String[] args) {
@@ -65,12 +174,24 @@ public class Life {
 			if (config.numThreads != -1 && numThreads == 1) {
 				numThreads = config.numThreads;
 			} 
-			if (config.spin != -1 && pauseIterations == -(500000000/n/n)) {
-				pauseIterations = config.spin;
+			if (config.frame != -1 && frameNanos == -1 && legacySpin == 0) {
+				frameNanos = config.frame;
+			} 
+			if (config.spin != -1 && frameNanos == -1 && legacySpin == 0) {
+				legacySpin = config.spin;
+			}
+			if (config.width != -1 && cols == defaultSize) {
+				cols = config.width;
+			}
+			if (config.height != -1 && rows == defaultSize) {
+				rows = config.height;
 			}
 			if (config.shape != null && !glider) {
 				shape = config.shape;
 			}
+			if (config.rule != null && rule == null) {
+				rule = config.rule;
+			}
 		   } else { System.err.println("Could not configure from file. Using default values instead."); }
 		}
 	    } else if (args[i].equals("-t")) {
@@ -88,7 +209,21 @@ public class Life {
                                           args[i]));
                     }
                 }
+            } else if (args[i].equals("-f")) {
+                if (++i >= args.length) {
+                    die("Missing frame time\n");
+                } else {
+                    long fn = parseFrame(args[i]);
+                    if (fn >= 0) {
+                        frameNanos = fn;
+                    } else {
+                        die(String.format("Invalid frame time: %s\n",
+                                          args[i]));
+                    }
+                }
             } else if (args[i].equals("-s")) {
+                // Legacy: spin iterations per cell, now taken as about
+                // a nanosecond each, and turned into a frame time below.
                 if (++i >= args.length) {
                     die("Missing number of spin iterations\n");
                 } else {
@@ -97,13 +232,14 @@ public class Life {
                         di = Integer.parseInt(args[i]);
                     } catch (NumberFormatException e) { }
                     if (di > 0) {
-                        pauseIterations = di;
+                        legacySpin = di;
+                        frameNanos = -1;
                     } else {
                         die(String.format("Invalid number of spin iterations: %s\n",
                                           args[i]));
                     }
                 }
-            } else if (args[i].equals("-k")) { // The user may specify the number of tasks to use in the range (0, 100].
+            } else if (args[i].equals("-k")) { // The user may specify the number of tasks to use in the range (0, rows].
                 if (++i >= args.length) {
                     die("Missing number of tasks\n");
                 } else {
@@ -111,33 +247,268 @@ public class Life {
                     try {
                         k = Integer.parseInt(args[i]);
                     } catch (NumberFormatException e) { }
-                    if (k > 0 && k <= 100) {
+                    if (k > 0) {
                         numTasks = k;
                     } else {
                         die(String.format("Invalid number of tasks: %s\n",
                                           args[i]));
                     }
                 }
+            } else if (args[i].equals("-n") || args[i].equals("-w")
+                       || args[i].equals("-h")) {
+                // -n sets both dimensions of a square board, -w and -h
+                // one each for a rectangular one.
+                String opt = args[i];
+                if (++i >= args.length) {
+                    die("Missing board size\n");
+                } else {
+                    int sz = -1;
+                    try {
+                        sz = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (sz > 0) {
+                        if (!opt.equals("-h")) {
+                            cols = sz;
+                        }
+                        if (!opt.equals("-w")) {
+                            rows = sz;
+                        }
+                    } else {
+                        die(String.format("Invalid board size: %s\n",
+                                          args[i]));
+                    }
+                }
+            } else if (args[i].equals("-g")) {
+                if (++i >= args.length) {
+                    die("Missing target generation\n");
+                } else {
+                    long g = -1;
+                    try {
+                        g = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (g > 0) {
+                        target = g;
+                    } else {
+                        die(String.format("Invalid target generation: %s\n",
+                                          args[i]));
+                    }
+                }
             } else if (args[i].equals("--headless")) {
                 headless = true;
             } else if (args[i].equals("--glider")) {
                 glider = true;
+            } else if (args[i].equals("--sparse")) {
+                engine = (R, N, C) -> new SparseEngine(R, N, C, rule);
+                engineOption = args[i];
+            } else if (args[i].equals("--packed")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new BitEngine(R, N, C, rule);
+            } else if (args[i].equals("--table")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ArrayEngine(R, N, C, rule,
+                                                      new TableKernel(rule));
+            } else if (args[i].equals("--vector")) {
+                engineOption = args[i];
+                engine = Life::vectorEngine;
+            } else if (args[i].equals("--adaptive")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new AdaptiveEngine(R, N, C, rule);
+            } else if (args[i].equals("--dataflow")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new BitEngine(R, N, C, rule);
+                dataflow = true;
+            } else if (args[i].equals("--forkjoin")) {
+                if (++i >= args.length) {
+                    die("Missing number of cells per ForkJoin task\n");
+                } else {
+                    int fj = -1;
+                    try {
+                        fj = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (fj > 0) {
+                        forkJoin = fj;
+                    } else {
+                        die(String.format("Invalid number of cells per ForkJoin task: %s\n",
+                                          args[i]));
+                    }
+                }
+            } else if (args[i].equals("--virtual")) {
+                virtual = true;
+            } else if (args[i].equals("--unbounded")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ChunkEngine(R, N, C, rule);
+            } else if (args[i].equals("--bytes")) {
+                engineOption = args[i];
+                engine = (R, N, C) -> new ByteEngine(R, N, C, rule);
+            } else if (args[i].equals("--depth")) {
+                if (++i >= args.length) {
+                    die("Missing depth\n");
+                } else {
+                    int d = -1;
+                    try {
+                        d = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) { }
+                    if (d > 0 && d <= maxDepth) {
+                        depth = d;
+                    } else {
+                        die(String.format("Invalid depth: %s (must be 1 to %d)\n",
+                                          args[i], maxDepth));
+                    }
+                }
+            } else if (args[i].equals("--rule")) {
+                if (++i >= args.length) {
+                    die("Missing rule\n");
+                } else {
+                    try {
+                        rule = Rule.parse(args[i]);
+                    } catch (IllegalArgumentException e) {
+                        die(e.getMessage() + "\n");
+                    }
+                }
+            } else if (args[i].equals("--offheap")) {
+                engineOption = args[i];
+                engine = Life::offHeapEngine;
+            } else if (args[i].equals("--map")) {
+                // Keep an off-heap board in the named file, resuming
+                // from it if it already holds a board of this size.
+                if (++i >= args.length) {
+                    die("Missing board file\n");
+                } else {
+                    mapFile = args[i];
+                    engine = Life::offHeapEngine;
+                    engineOption = "--map";
+                }
             } else {
                 die(String.format("Unexpected argument: %s\n", args[i]));
             }
         }
+        if (frameNanos == -1) {
+            frameNanos = (legacySpin > 0) ? (long) legacySpin * rows * cols
+                                          : defaultFrame;
+        }
+        if (rule == null) {
+            rule = Rule.LIFE;
+        } else if (rule.bornFromNothing()
+                   && ("--sparse".equals(engineOption)
+                       || "--unbounded".equals(engineOption) || target > 0)) {
+            die(String.format("Rule %s (with B0) cannot be used with --sparse, --unbounded or -g\n",
+                              rule));
+        }
+        if ((dataflow ? 1 : 0) + (forkJoin > 0 ? 1 : 0) + (virtual ? 1 : 0) > 1) {
+            die("Only one of --dataflow, --forkjoin and --virtual can be used\n");
+        }
+        if (depth > 1 && (engineOption != null || rule.states() > 2)) {
+            die("--depth only applies to the default engine and two-state rules\n");
+        }
+        if (rule.states() > 2) {
+            // Only ByteEngine stores the dying states.
+            if (target > 0) {
+                die(String.format("Rule %s cannot be used with -g\n", rule));
+            } else if (engineOption == null) {
+                engine = (R, N, C) -> new ByteEngine(R, N, C, rule);
+            } else if (!engineOption.equals("--bytes")) {
+                die(String.format("Rule %s has more than two states, and cannot be used with %s\n",
+                                  rule, engineOption));
+            }
+        }
+        if (numTasks > rows) {
+            numTasks = rows;    // no point in tasks with no rows to update
+        }
+    }
+
+    // A headless board, run by Delegators in a given mode on a pool of
+    // its own, for the measurements in AllocCheck and PoolBench.  There is
+    // no UI, and so none of the UI's threads, only the pool measured and
+    // the thread that drives it.  They are in files of their own, and
+    // reach the classes in this one only through here.
+    //
+    static class Trial {
+        private final LifeBoard lb;
+        private final Coordinator c;
+        private final ExecutorService pool;
+        private final ExecutorService runner;
+        private final int threads, tasks, leaf;
+        private final boolean virtual;
+        private Delegator d = null;
+
+        public Coordinator getCoordinator() {
+            return c;
+        }
+
+        // Start a new run, with a new Delegator, on the same threads.
+        //
+        public void start() {
+            d = new Delegator(lb, c, threads, tasks, leaf, virtual, pool);
+            c.register();       // as in UI.onRunClick
+            runner.execute(d);
+        }
+
+        // Generations started so far in the current run.
+        //
+        public long getRounds() {
+            return d.getRounds();
+        }
+
+        // The threads of the current run (see Delegator.getThreads).
+        //
+        public List<Thread> getThreads() {
+            return d.getThreads();
+        }
+
+        // Stop the current run, and wait for it to finish.
+        //
+        public void stop() {
+            c.stop();
+        }
+
+        public void shutdown() {
+            c.stop();
+            runner.shutdown();
+            pool.shutdown();
+        }
+
+        // Constructor.  A size by size board with the default engine and
+        // no delay, whose live cells are the {x, y} pairs in cells, run by
+        // T threads in K tasks, with a ForkJoin leaf size L (0 for none),
+        // or on virtual threads if V.
+        //
+        public Trial(int size, int cells[][], int T, int K, int L, boolean V) {
+            List<Point> shape = new ArrayList<>();
+            for (int p[] : cells) {
+                shape.add(new Point(p[0], p[1]));
+            }
+            c = new Coordinator(0);
+            lb = new LifeBoard(size, size, c, null, true, false,
+                               (R, N, C) -> new ArrayEngine(R, N, C, Rule.LIFE), shape);
+            threads = T;
+            tasks = K;
+            leaf = L;
+            virtual = V;
+            pool = Delegator.newPool(T, L, V);
+            runner = Delegator.newPool(1, 0, false);
+        }
     }
 
     public static void main(String[] args) {
         parseArgs(args);
         Life me = new Life();
-        JFrame f = new JFrame("Life");
-        f.addWindowListener(new WindowAdapter() {
-          public void windowClosing(WindowEvent e) {
-            System.exit(0);
-          }
-        });
-        UI ui = me.buildUI(f, numTasks, shape);
+        JFrame f = null;
+        UI ui;
+        if (headless) {
+            // Nothing to show, and perhaps no display to show it on.
+            ui = me.buildUI(new JInternalFrame("Life"), numTasks, shape);
+        } else {
+            f = new JFrame("Life");
+            ui = me.buildUI(f, numTasks, shape);
+            f.addWindowListener(new WindowAdapter() {
+              public void windowClosing(WindowEvent e) {
+                ui.quit();
+              }
+            });
+        }
+        if (target > 0) {
+            fastForward(ui.getLifeBoard());
+        }
         if (headless) {
             ui.onRunClick();
         } else {
@@ -177,6 +548,25 @@ class Parser {
 					
 				} catch (NumberFormatException e) { System.err.println("Cannot read spin. Is the format \"s: <number here>\"?");}
 
+			} else if( line.startsWith("f:") ) {
+				long frame = Life.parseFrame(line.replace("f:", ""));
+				if (frame >= 0) {
+					config.frame = frame;
+				} else { System.err.println("Cannot read frame time. Is the format \"f: <milliseconds>\"?"); }
+			} else if( line.startsWith("n:") ) {
+				int size = parseSize(line.replace("n:", ""), "n");
+				config.width = size;
+				config.height = size;
+			} else if( line.startsWith("w:") ) {
+				config.width = parseSize(line.replace("w:", ""), "w");
+			} else if( line.startsWith("h:") ) {
+				config.height = parseSize(line.replace("h:", ""), "h");
+			} else if( line.startsWith("rule:") ) {
+				try {
+					config.rule = Rule.parse(line.replace("rule:", ""));
+				} catch (IllegalArgumentException e) {
+					System.err.println("Cannot read rule. Is the format \"rule: B<digits>/S<digits>\"?");
+				}
 			} else if( line.startsWith("shape:") ){
 				String s = line.replace("shape:", "");
 				List<Point> shape = getPoints(s);
@@ -188,8 +578,24 @@ class Parser {
 	return config;
    }  
 
+    // Reads one board dimension from the config file.  Returns -1 (not
+    // configured) if the value is missing or invalid.
+    private int parseSize(String s, String key) {
+	try {
+		int size = Integer.parseInt(s);
+		if (size > 0) {
+			return size;
+		}
+		System.err.println("Whoops! Board size in config file must be > 0.");
+	} catch (NumberFormatException e) {
+		System.err.println("Cannot read board size. Is the format \"" + key + ": <number here>\"?");
+	}
+	return -1;
+    }
+
     // A shape can be represented as a List of points on the UI. This method parses that information
     // from a string written in the following format: (x1,y1);(x2,y2);(x3,y3);(x4,y4) 	
+    // A point may also give the state of a dying cell, as in (x,y,state).
     private List<Point> getPoints(String s) {
 	String[] coordinates = s.split(";");
 	List<Point> points = new ArrayList<>();
@@ -199,8 +605,9 @@ class Parser {
 		try {
 			int x = Integer.parseInt(point[0]);
 			int y = Integer.parseInt(point[1]);
-			if (x > 0 && y > 0 && x < 100 && y < 100) { // NOTE: HARDCODED BOUNDRIES
-				points.add(new Point(x, y));
+			int st = (point.length > 2) ? Integer.parseInt(point[2]) : 1;
+			if (st > 0) { // coordinates are checked by the LifeBoard
+				points.add(new Point(x, y, st));
 			} else { System.err.println("Whoops! Coordinates must be in the bounds of the board in the config file.");}
 			
 		} catch (NumberFormatException e) { System.err.println("Cannot read points. Are they numbers?");}
@@ -217,23 +624,37 @@ class Parser {
 // of time, we have implemented it as a general Java class.
 class Configuration {
     public int numThreads;
-    public int spin;
+    public int spin;        // legacy s:
+    public long frame;      // f:, in nanoseconds
+    public int width;
+    public int height;
     public List<Point> shape;	
+    public Rule rule;
 
     public Configuration() {
 	numThreads = -1;
 	spin = -1;
+	frame = -1;
+	width = -1;
+	height = -1;
 	shape = null;
+	rule = null;
     }
 
     public Configuration(int NT, int S, List<Point> SH) {
 	numThreads = NT;
 	spin = S;
+	frame = -1;
+	width = -1;
+	height = -1;
 	shape = SH;
+	rule = null;
     }
 
     public boolean isPresent() {
-        if (numThreads == -1 && spin == -1L && shape == null) {
+        if (numThreads == -1 && spin == -1L && frame == -1 && width == -1
+            && height == -1
+            && shape == null && rule == null) {
 		return false;
 	}
 	return true;
@@ -244,13 +665,24 @@ class Configuration {
 class Point {
     int x;
     int y;
+    int state = 1;  // alive, or dying under a Generations rule
 
     public Point(int row, int col) {
         x = row;
         y = col;
     }
 
+    public Point(int row, int col, int st) {
+        this(row, col);
+        state = st;
+    }
+
+    // Live cells are written (x,y); dying ones (x,y,state).
     public String toString() {
+	if (state != 1) {
+	    return "(" + String.valueOf(x) + "," + String.valueOf(y) + ","
+	        + String.valueOf(state) + ")";
+	}
 	return "(" + String.valueOf(x) + "," + String.valueOf(y) + ")";
     }
 
@@ -259,35 +691,146 @@ class Point {
 // Controller class where threads are created using ExecutorService and the 
 // appropraite tasks are delegated and run by the threads.
 class Delegator implements Runnable {
+    private static final int spins = 100;      // before yielding
+    private static final int yields = 10;      // before parking
+    private static final long parkNanos = 1000000;
+        // longest park, after which a waiting thread checks the Coordinator
+
     private final LifeBoard lb;
     private final Coordinator c;
-    private final UI u;
     private final int nt;
     private final int k;
     private final ExecutorService pool;
 
+    // Everything a generation needs is made here, once, and reused: the
+    // blocks of the board (see Partition), a Task for each, their weights,
+    // and where the parts begin.  The loop in run then allocates nothing,
+    // and neither do the Workers.
+    private final int blocks[][];     // {top, bottom, left, right}, in snake order
+    private final Task tasks[];       // [b]: block b
+    private final int weight[];       // [i]: active tiles in row i
+    private final double w[];         // [b]: weight of block b; 0 to skip it
+    private final Rebalancer rb;      // where the parts begin
+    private volatile int parts;       // in this generation
+    private final AtomicLong next = new AtomicLong();
+        // round << 32 | part to claim (see claim)
+    private final AtomicInteger finished = new AtomicInteger();   // parts done
+    private volatile long round = 0;  // generations started
+    private volatile Thread driver;   // the thread in run, while it waits
+    private final Worker workers[];   // none in ForkJoin or virtual mode
+
+    // ForkJoin mode (--forkjoin): each generation, a Split of the whole
+    // board halves itself until its pieces are at most leaf cells, and
+    // the pool's idle threads steal the halves that are not yet started,
+    // so a busy part of the board is shared out as it turns out to be
+    // busy, instead of by an estimate made in advance.
+    private final int leaf;           // cells; 0 when not in ForkJoin mode
+    private final long active[];      // [i]: active tiles in rows [0, i)
+
+    // Virtual mode (--virtual): each block of the board that has anything
+    // to compute is a task of its own, on a virtual thread of its own, so
+    // there is no pool to size and -k can be as large as the board allows.
+    // Where virtual threads are not available (before JDK 21) a cached
+    // pool of ordinary threads stands in for them.
+    private final boolean virtual;
+    private final Runnable tileRuns[];   // [b]: computes block b
+    private int tileCount;               // in this generation
+    private static boolean warned = false;
+
+    // Constructor, in the mode set on the command line, on the UI's pool.
+    //
     public Delegator(LifeBoard LB, Coordinator C, UI U, int numThreads, int numTasks) {
+        this(LB, C, numThreads, numTasks, Life.getForkJoin(), Life.isVirtual(), U.getPool());
+    }
+
+    // Constructor, for a given mode: a ForkJoin leaf size L (0 for none),
+    // or virtual threads if V, on pool P (as made by newPool for the same
+    // mode).  The pool outlives the Delegator: it is not shut down here.
+    //
+    public Delegator(LifeBoard LB, Coordinator C, int numThreads, int numTasks,
+                     int L, boolean V, ExecutorService P) {
         lb = LB;
         c = C;
-        u = U;
         nt = numThreads;
         k = numTasks;
-	// Creating a pool of threads.
-        pool = Executors.newFixedThreadPool(nt);
+        leaf = L;
+        virtual = V;
+        pool = P;
+        active = new long[lb.rows + 1];
+
+        blocks = Partition.blocks(lb.rows, lb.cols, lb.columnAlign(), k);
+        tasks = new Task[blocks.length];
+        for (int b = 0; b < blocks.length; b++) {
+            tasks[b] = new Task(blocks[b][0], blocks[b][1], blocks[b][2], blocks[b][3]);
+        }
+        weight = new int[lb.rows];
+        w = new double[blocks.length];
+        Partition.weigh(blocks, lb.cols, null, w);
+        rb = new Rebalancer(w, k);
+        workers = new Worker[(leaf > 0 || virtual) ? 0 : nt];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Worker(this, c);
+        }
+        tileRuns = new Runnable[virtual ? blocks.length : 0];
+        for (int b = 0; b < tileRuns.length; b++) {
+            final int tile = b;
+            tileRuns[b] = () -> runTile(tile);
+        }
     }
 
+    // A pool of nt threads for Delegators in the given mode (see the
+    // constructor), to be made once and kept from Run to Run.  The fixed
+    // pool's threads are started at once, so that the first Run does not
+    // wait for them either.
+    //
+    public static ExecutorService newPool(int nt, int L, boolean V) {
+        if (L > 0) {
+            return new ForkJoinPool(nt);
+        } else if (V) {
+            return virtualThreads();
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(nt);
+        pool.prestartAllCoreThreads();
+        return pool;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor, if this JVM has it.  It
+    // is looked up by reflection so that the rest still builds and runs
+    // on older JDKs.
+    //
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            if (!warned) {
+                System.err.println("No virtual threads in this JVM: using a cached thread pool");
+                warned = true;
+            }
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // The Delegator itself is registered by whoever hands it to its
+    // thread (see UI.onRunClick), so that stop waits for it from then on.
     public void run() {
       try {
-        c.register();
+        if (Life.isDataflow()) {
+            // No generations to wait for: the tasks submit each other.
+            lb.dataflow(k).start(pool, lb::updateDataflow);
+            return;
+        }
+        // The Workers stay on the pool's threads for the whole run.  Each
+        // is registered before it is handed over, so that stop waits for
+        // those that have not started yet.
+        for (Worker wk : workers) {
+            c.register();
+            pool.execute(wk);
+        }
           while(true) {
               runOneGeneration();
-	      // The following statement helps in the functionality of 
-	      // the Step Button, which allows a user to go through the
-	      // game generation by generation.
-	      if (u.step_switch) {
-		  u.pauseButton.doClick();
-              }
-	      u.step_switch = false;
+              // Pausing, stepping and stopping are up to updateBoard,
+              // which applies the UI's commands (see Coordinator.pace).
           }
       } catch (Coordinator.KilledException e) {}
       finally {
@@ -296,89 +839,307 @@ class Delegator implements Runnable {
 
     }
 
-    // Creates a sets of tasks and assigns them to the pool of threads using invokeAll.
+    // Starts the Workers on this generation's k parts, and waits until
+    // every part has been computed.  This takes the place of generating k
+    // Callables and calling invokeAll, which allocated the tasks, the list
+    // and the futures all over again every generation.
+    //
+    // The Workers time each part, and the boundaries between the parts
+    // then move so that they take about the same time (see Rebalancer).
+    // If the engine skips settled tiles, blocks with nothing to compute
+    // are skipped altogether.
     public void runOneGeneration() throws Coordinator.KilledException {
-        List<Callable<Boolean>> tasks = generateTasks(k);
+        if (leaf > 0) {
+            forkJoinGeneration();
+            return;
+        }
+        weigh();
+        if (virtual) {
+            virtualGeneration();
+            return;
+        }
+        next.set((long) (int) round << 32 | Integer.MAX_VALUE);
+            // closes the last round, before parts changes under it
+        parts = rb.parts();
+        finished.set(0);
+        next.set((long) (int) (round + 1) << 32);
+        driver = Thread.currentThread();
+        round++;                        // publishes the cuts to the Workers
+        for (Worker wk : workers) {
+            wk.wake();
+        }
+        awaitFinished(parts);
+        rb.rebalance();
+        lb.updateBoard();
+    }
+
+    // Set w[] to the weight of each block in the next generation.
+    //
+    private void weigh() {
+        boolean weighted = lb.activeTiles(0) >= 0;
+        if (weighted) {
+            for (int i = 0; i < lb.rows; i++) {
+                weight[i] = lb.activeTiles(i);
+            }
+        }
+        Partition.weigh(blocks, lb.cols, weighted ? weight : null, w);
+    }
+
+    // Wait until n parts or tiles have finished, spinning, then parking.
+    //
+    private void awaitFinished(int n) throws Coordinator.KilledException {
+        for (int s = 0; finished.get() < n; s++) {
+            if (s < spins) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, parkNanos);
+                c.poll();
+            }
+        }
+    }
+
+    // The virtual version of runOneGeneration: one task per block with
+    // anything to compute.  The tasks are not registered with the
+    // Coordinator (there may be tens of thousands of them); instead, if
+    // the driver is killed, it waits for those still out, which are then
+    // being killed too, before it lets stop return.
+    //
+    private void virtualGeneration() throws Coordinator.KilledException {
+        int n = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            if (w[b] > 0) {
+                n++;
+            }
+        }
+        tileCount = n;
+        finished.set(0);
+        driver = Thread.currentThread();
+        round++;
+        for (int b = 0; b < blocks.length; b++) {
+            if (w[b] > 0) {
+                pool.execute(tileRuns[b]);
+            }
+        }
         try {
-	  // invokeAll takes care of the syncronization and task delegation. 
-	  // Given a set of tasks, it delegates them appropriately to each thread.
-	  // It returns when all tasks have been completed. Thus, as the programmer, 
-	  // we do not have to worry about creating a barrier. 
-          pool.invokeAll(tasks);
-          lb.updateBoard();
-        } catch (InterruptedException e) { System.err.println("Exception :("); }
-    }
-
-    // Divides the board into ranges of contiguous rows to be updated by a thread.
-    // Each task should have roughly n/numTask rows.
-    public List<Callable<Boolean>> generateTasks(int numTasks) {
-      double begin = 0;
-      double interval = (lb.n*1.0) /( numTasks*1.0);
-      double end = interval;
-      List<Callable<Boolean>> tasks = new ArrayList<>();
-      for(int i = 0; i < numTasks; i++) {
-	  if(end >= lb.n-1) {
-		end = lb.n*1.0;
-	  }
-          tasks.add(new Worker(lb, c, u, new Task((int) begin, (int) end)));
-          begin += interval;
-          end += interval;
-      }
-      return tasks;
+            awaitFinished(n);
+        } catch (Coordinator.KilledException e) {
+            while (finished.get() < n) {
+                LockSupport.parkNanos(this, parkNanos);
+            }
+            throw e;
+        }
+        lb.updateBoard();
+    }
+
+    private void runTile(int b) {
+        try {
+            lb.doGeneration(tasks[b]);
+        } catch (Coordinator.KilledException e) {
+        } finally {
+            if (finished.incrementAndGet() == tileCount) {
+                LockSupport.unpark(driver);
+            }
+        }
+    }
+
+    // The ForkJoin version of runOneGeneration.  Rows with no active tiles
+    // are left out, by way of active[], so that the pool spends no time
+    // splitting the settled parts of the board.
+    //
+    private void forkJoinGeneration() throws Coordinator.KilledException {
+        boolean weighted = lb.activeTiles(0) >= 0;
+        for (int i = 0; i < lb.rows; i++) {
+            active[i+1] = active[i] + (weighted ? lb.activeTiles(i) : 1);
+        }
+        round++;
+        ((ForkJoinPool) pool).invoke(new Split(lb, active, leaf, 0, lb.rows, 0, lb.cols));
+        c.poll();   // a Split that was killed just stops
+        lb.updateBoard();
+    }
+
+    // Claim the next part of round r, or return -1 if there is none left.
+    // The round and the part are claimed together, by a CAS on next, so a
+    // Worker still on round r once the next has started claims nothing,
+    // and cannot take one of the new round's parts or compare against its
+    // part count.
+    //
+    private int claim(long r) {
+        for (long v = next.get(); (int) (v >>> 32) == (int) r; v = next.get()) {
+            int p = (int) v;
+            if (p >= parts) {
+                return -1;
+            }
+            if (next.compareAndSet(v, v + 1)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    // Called by the Workers: compute parts of round r until there are none
+    // left, and wake the driver after the last.
+    //
+    void work(long r) throws Coordinator.KilledException {
+        for (int p = claim(r); p >= 0; p = claim(r)) {
+            long start = System.nanoTime();
+            for (int b = rb.first(p); b < rb.first(p+1); b++) {
+                if (w[b] > 0) {
+                    lb.doGeneration(tasks[b]);
+                }
+            }
+            rb.record(p, System.nanoTime() - start);
+            if (finished.incrementAndGet() == parts) {
+                LockSupport.unpark(driver);
+            }
+        }
+    }
+
+    // Called by the Workers: wait for a generation after seen to start,
+    // spinning, then yielding, then parking.
+    //
+    long await(long seen, Worker wk) throws Coordinator.KilledException {
+        for (int n = 0; round == seen; n++) {
+            if (n < spins) {
+                Thread.onSpinWait();
+            } else if (n < spins + yields) {
+                Thread.yield();
+                c.poll();
+            } else {
+                wk.sleeper = Thread.currentThread();
+                if (round == seen) {
+                    LockSupport.parkNanos(this, parkNanos);
+                }
+                wk.sleeper = null;
+                c.poll();
+            }
+        }
+        return round;
+    }
+
+    // The threads that run generations: this one's, while run is running,
+    // and the pool's, once their Workers have started.
+    //
+    public List<Thread> getThreads() {
+        List<Thread> result = new ArrayList<>();
+        if (driver != null) {
+            result.add(driver);
+        }
+        for (Worker wk : workers) {
+            if (wk.thread != null) {
+                result.add(wk.thread);
+            }
+        }
+        return result;
+    }
+
+    // Generations started so far.
+    //
+    public long getRounds() {
+        return round;
     }
 }
 
-// The Worker is the thread that does the actual work of calculating new
-// generations.
+// The Worker runs on one of the pool's threads from Run to Stop, and
+// computes whichever parts of each generation it claims first.  Between
+// generations it waits for the Delegator to start the next.
 //
-// We made this a Callable as invokeAll takes a collection of Callables.
-class Worker implements Callable<Boolean> {
-    private final LifeBoard lb;
+class Worker implements Runnable {
+    private final Delegator d;
     private final Coordinator c;
-    private final UI u;
-    private final Task t;
-
-    // The run() method of a Java Thread is never invoked directly by
-    // user code.  Rather, it is called by the Java runtime when user
-    // code calls start().
-    //
-    // This method updates the appropriate number of rows and returns a boolean.
-    // The boolean returned is of little use. It provides of with the convenience of
-    // using Callables, which seemed to be allowed in the prompt, as stated here:
-    // "In the Executor framework, you can use built-in Executor methods to force all extant tasks 
-    // to complete before starting the next generation."  
-    public Boolean call() {
+    volatile Thread thread;      // running this Worker, once started
+    volatile Thread sleeper;     // thread, while parked waiting for a generation
+
+    public void run() {
+        thread = Thread.currentThread();
         try {
-            c.register();
-            try {
-                    lb.doGeneration(t);
-            } catch(Coordinator.KilledException e) { return false; /* throw exception instead of catching it? */}
+            long seen = 0;
+            while (true) {
+                seen = d.await(seen, this);
+                d.work(seen);
+            }
+        } catch (Coordinator.KilledException e) {
         } finally {
             c.unregister();
         }
-        return true;
+    }
+
+    // Unpark the thread if it is waiting for a generation to start.
+    //
+    void wake() {
+        Thread t = sleeper;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
     }
 
     // Constructor
     //
-    public Worker(LifeBoard LB, Coordinator C, UI U, Task task) {
-        lb = LB;
+    public Worker(Delegator D, Coordinator C) {
+        d = D;
         c = C;
-        u = U;
-        t = task;
     }
 }
 
-// Represents the range of rows that a thread should update.
-// start is inclusive and end is exclusive. In other words,
-// the range looks like, [start, end).
+// A block of the board, in ForkJoin mode.  One with more than leaf cells
+// is cut in two, across its longer side, and the halves run as separate
+// tasks; columns are only cut at the engine's columnAlign, and not at all
+// if it computes whole rows only.
+//
+class Split extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final LifeBoard lb;
+    private final long active[];      // see Delegator
+    private final int leaf;
+    private final int start, end, left, right;
+
+    protected void compute() {
+        if (active[end] == active[start]) {
+            return;                     // nothing will change here
+        }
+        int align = lb.columnAlign();
+        int half = (align > 0) ? (right - left) / 2 / align * align : 0;
+        if ((long) (end - start) * (right - left) <= leaf
+            || (end - start < 2 && half == 0)) {
+            try {
+                lb.doGeneration(new Task(start, end, left, right));
+            } catch (Coordinator.KilledException e) { }
+        } else if (half > 0 && (right - left >= end - start || end - start < 2)) {
+            invokeAll(new Split(lb, active, leaf, start, end, left, left + half),
+                      new Split(lb, active, leaf, start, end, left + half, right));
+        } else {
+            int mid = (start + end) / 2;
+            invokeAll(new Split(lb, active, leaf, start, mid, left, right),
+                      new Split(lb, active, leaf, mid, end, left, right));
+        }
+    }
+
+    // Constructor
+    //
+    public Split(LifeBoard LB, long A[], int L, int s, int e, int l, int r) {
+        lb = LB;
+        active = A;
+        leaf = L;
+        start = s;
+        end = e;
+        left = l;
+        right = r;
+    }
+}
+
+// Represents the block of cells that a thread should update: rows
+// [start, end) of columns [left, right).  The start is inclusive and
+// the end exclusive in both directions.
 class Task {
     int start; // First row to be updated (inclusive).
     int end; // First row after last row that should be update. 
+    int left; // First column to be updated (inclusive).
+    int right; // First column after the last one to be updated.
 
-    public Task(int s, int e) {
+    public Task(int s, int e, int l, int r) {
       start = s;
       end = e;
+      left = l;
+      right = r;
     }
 
 }
@@ -392,83 +1153,77 @@ class LifeBoard extends JPanel {
     private static final int dotsize = 6;
     private static final int border = dotsize;
     static  boolean headless = false;
-    private int B[][];  // board contents
-    private int A[][];  // scratch board
-    private int T[][];  // temporary pointer
-    private int generation = 0;
+    private final LifeEngine engine;  // board contents
+    private final Color colors[];     // colour of each cell state
+    private final boolean unbounded;  // ChunkEngine: no edges, and scrollable
+
+    // Top left cell of the part of the world on display.  Only an
+    // unbounded world moves; a torus is always shown whole.
+    private volatile int top = 0;
+    private volatile int left = 0;
+    private int dragX, dragY, dragTop, dragLeft;   // where a drag started
+    private volatile Dataflow df = null;   // once --dataflow has started
+    private final TripleBuffer frames;     // see publishFrame
+    private long generation = 0;
 
     private static long start_time;
 
     // following fields are set by constructor:
     private final Coordinator c;
     private final UI u;
-    public final int n;  // number of cells on a side.  
+    public final int rows;  // number of cells down the board.
+    public final int cols;  // number of cells across the board.
 
     // Called by the UI when it wants to start over.
     //
     public void clear() {
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                B[i][j] = 0;
-            }
+        if (df != null) {
+            df.clear();
+        } else {
+            engine.clear();
         }
-        repaint();
+        publishFrame();
             // tell graphic system that LifeBoard needs to be re-rendered
     }
 
+    // Work the engine will do on row i in the next generation (see
+    // LifeEngine.activeTiles).
+    public int activeTiles(int i) {
+        return engine.activeTiles(i);
+    }
+
     // This is the function that actually plays (one full generation of)
     // the game.  It is called by the run() method of Thread class
     // Worker.    
     //
     // We split the original method into two separate methods, doGeneration and updateBoard.
-    // Instead of updating the entire board at once, each thread updates some number of rows. 
+    // Instead of updating the entire board at once, each thread updates some blocks of cells. 
+    // The cells themselves are stored and stepped by the LifeEngine.
 
     public void doGeneration(Task task) throws Coordinator.KilledException {
-        for (int i = task.start; i < task.end; i++) {
-            for (int j = 0; j < n; j++) {
-
-                // NOTICE: you are REQUIRED to call hesitate() EVERY TIME
-                // you update a LifeBoard cell.  The call serves two
-                // purposes: (1) it checks to see whether you should pause
-                // or stop; (2) it introduces delay that allows you to
-                // see the board evolving and that will give you the
-                // appearance of speedup with additional threads.
-
-                c.hesitate();
-                int im = (i+n-1) % n; int ip = (i+1) % n;
-                int jm = (j+n-1) % n; int jp = (j+1) % n;
-                switch (B[im][jm] + B[im][j] + B[im][jp] +
-                        B[i][jm]             + B[i][jp] +
-                        B[ip][jm] + B[ip][j] + B[ip][jp]) {
-                    case 0 :
-                    case 1 : A[i][j] = 0;       break;
-                    case 2 : A[i][j] = B[i][j]; break;
-                    case 3 : A[i][j] = 1;       break;
-                    case 4 :
-                    case 5 :
-                    case 6 :
-                    case 7 :
-                    case 8 : A[i][j] = 0;       break;
-                }
-            }
-        }
+        engine.doGeneration(task.start, task.end, task.left, task.right);
+    }
 
+    // See LifeEngine.columnAlign.
+    //
+    public int columnAlign() {
+        return engine.columnAlign();
     }
 
 
     // This method updates and repaints the board (if necessary) when called. 
     // It is called when all of the threads have finished updating their rows.
     public void updateBoard() throws Coordinator.KilledException {
-      c.hesitate();
-      T = B;  B = A;  A = T;
+      c.pace(engine.depth());
+      engine.swap();
       if (headless) {
-          if (generation % 10 == 0) {
+          if (generation % 10 < engine.depth()) {   // every tenth generation
               System.out.print(System.currentTimeMillis() + ", ");
           }
       } else {
-          repaint ();
+          publishFrame();
       }
-      ++generation;
+      generation += engine.depth();
     }
 
     // The following method is called automatically by the graphics
@@ -485,76 +1240,240 @@ class LifeBoard extends JPanel {
 
         super.paintComponent(g);    // clears panel
 
-        // The following is synchronized to avoid race conditions with
-        // worker threads.
-        synchronized (u) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    drawSpot (i, j, g);
-                }
+        // The latest snapshot from publishFrame, not the board itself: the
+        // threads computing the board never wait for this, nor this for
+        // them.
+        byte f[] = frames.latest();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                drawSpot (i, j, f[i*cols + j], g);
             }
         }
     }
 
+    // Take a snapshot of the part of the board on display, for
+    // paintComponent, and ask for it to be painted.  Called by the thread
+    // that finishes each generation, and by the UI only while stopped or
+    // while that thread is parked (Coordinator.isParked), so that no two
+    // threads do at once.
+    //
+    public void publishFrame() {
+        if (headless) {
+            return;
+        }
+        byte f[] = frames.back();
+        int t = top, l = left;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                f[i*cols + j] = (byte) cell(t + i, l + j);
+            }
+        }
+        frames.publish();
+        repaint();
+    }
+
     public void toggleClick (int mx, int my) {
         Dimension d = (getSize ());
-        int x = n * mx / d.width;
-        int y = n * my / d.height;
-        Graphics g = getGraphics ();
-        mx = d.width * x / n;       // round to nearest spot center
-        my = d.height * y / n;      // round to nearest spot center
-        B[x][y] = 1 - B[x][y];
-        drawSpot (x, y, g);
-        g.dispose ();   // reclaim resources eagerly
+        int i = rows * my / d.height;
+        int j = cols * mx / d.width;
+        if (i >= rows || j >= cols) {
+            return;     // click on the border, past the last spot
+        }
+        int ci = top + i, cj = left + j;
+        setCell(ci, cj, (cell(ci, cj) == 0) ? 1 : 0);
+        publishFrame();
     }
 
-    private void drawSpot (int x, int y, Graphics g) {
-        Dimension d = (getSize());
-        int mx = d.width * x / n;       // round to nearest spot center
-        int my = d.height * y / n;      // round to nearest spot center
-        if (B[x][y] == 1) {
-            g.setColor(Color.blue);
+    // Called by the UI when the mouse is pressed and then dragged: scroll
+    // an unbounded world along with the mouse.
+    //
+    public void startDrag(int mx, int my) {
+        dragX = mx;
+        dragY = my;
+        dragTop = top;
+        dragLeft = left;
+    }
+
+    // The new view appears with the next generation, or when the UI calls
+    // publishFrame (while stopped or paused).
+    //
+    public void drag(int mx, int my) {
+        if (!unbounded) {
+            return;
+        }
+        Dimension d = (getSize ());
+        top = dragTop - rows * (my - dragY) / d.height;
+        left = dragLeft - cols * (mx - dragX) / d.width;
+    }
+
+    // Cell (i, j) of the board, as the display and editing see it: with
+    // --dataflow, different stripes may be at different generations.
+    //
+    private int cell(int i, int j) {
+        Dataflow d = df;
+        return (d != null) ? d.get(i, j) : engine.get(i, j);
+    }
+
+    private void setCell(int i, int j, int v) {
+        Dataflow d = df;
+        if (d != null) {
+            d.set(i, j, v);
+        } else {
+            engine.set(i, j, v);
+        }
+    }
+
+    // The Dataflow that runs the board with --dataflow, cut into the given
+    // number of stripes the first time it is asked for.  Only safe while
+    // stopped.
+    //
+    public Dataflow dataflow(int parts) {
+        if (df == null) {
+            df = new Dataflow((BitEngine) engine, c, rows, parts, generation);
+        }
+        return df;
+    }
+
+    // Called by the thread that computes the top stripe under --dataflow,
+    // after each of its generations: the generation of the board is that
+    // of the stripe furthest behind.
+    //
+    public void updateDataflow() throws Coordinator.KilledException {
+        c.pace(1);      // stripe 0 has moved on one generation
+        long g = df.getGeneration();
+        if (headless) {
+            if (g / 10 != generation / 10) {   // every tenth generation
+                System.out.print(System.currentTimeMillis() + ", ");
+            }
         } else {
-            g.setColor(getBackground ());
+            publishFrame();
         }
-        g.fillOval (mx, my, dotsize, dotsize);
+        generation = g;
+    }
+
+    // True if cell (i, j) is part of the world: anywhere, if it is
+    // unbounded.
+    //
+    private boolean inWorld(int i, int j) {
+        return unbounded || (i >= 0 && j >= 0 && i < rows && j < cols);
+    }
+
+    // Spot (i, j) of the display shows cell (top+i, left+j), which was in
+    // the given state when the snapshot was taken.  It is drawn
+    // i spots down and j spots across, so that a Point (x, y) from a
+    // config file appears x across and y down.
+    //
+    private void drawSpot (int i, int j, int state, Graphics g) {
+        Dimension d = (getSize());
+        int mx = d.width * j / cols;        // round to nearest spot center
+        int my = d.height * i / rows;       // round to nearest spot center
+        int dot = Math.max(1, Math.min(dotsize, d.width / cols));
+        g.setColor(colors[state]);
+        g.fillOval (mx, my, dot, dot);
     }
 
     // Constructor
     //
-    public LifeBoard(int N, Coordinator C, UI U,
-                     boolean hdless, boolean glider, List<Point> shape) {
-        n = N;
+    public LifeBoard(int R, int N, Coordinator C, UI U,
+                     boolean hdless, boolean glider, EngineFactory ef, List<Point> shape) {
+        rows = R;
+        cols = N;
         c = C;
         u = U;
         headless = hdless;
 
-        A = new int[n][n];  // initialized to all 0
-        B = new int[n][n];  // initialized to all 0
+        engine = ef.create(rows, cols, c);
+        unbounded = engine instanceof ChunkEngine;
+        frames = headless ? null : new TripleBuffer(rows * cols);
 
-        setPreferredSize(new Dimension(width+border*2, height+border*2));
+        // Fit the longer side of the board to the canvas.
+        double scale = (double) Math.max(width, height) / Math.max(rows, cols);
+        setPreferredSize(new Dimension((int) (cols*scale) + border*2,
+                                       (int) (rows*scale) + border*2));
         setBackground(Color.white);
         setForeground(Color.black);
 
+        // Live cells are blue; dying ones fade from blue towards the
+        // background as they get closer to dead.
+        colors = new Color[engine.states()];
+        colors[0] = getBackground();
+        for (int s = 1; s < colors.length; s++) {
+            float f = (float) (s - 1) / (colors.length - 1);
+            colors[s] = new Color(f, f, 1.0f - 0.5f*f);
+        }
+
+        if (engine instanceof OffHeapEngine
+            && ((OffHeapEngine) engine).isResumed()) {
+            // Pick up where the mapped board left off.
+            generation = ((OffHeapEngine) engine).getGeneration();
+            publishFrame();
+            return;
+        }
+
         clear();
 
         if (glider) {
             // create an initial glider in the upper left corner
-            B[0][1] = B[1][2] = B[2][0] = B[2][1] = B[2][2] = 1;
+            engine.set(0, 1, 1);  engine.set(1, 2, 1);
+            engine.set(2, 0, 1);  engine.set(2, 1, 1);  engine.set(2, 2, 1);
         } else if (shape != null) { // If the user specified a shape in the config file, it is added to the UI here.
 	    for (Point s: shape) {
-		B[s.y][s.x] = 1;
+		if (inWorld(s.y, s.x) && s.state < engine.states()) {
+		    engine.set(s.y, s.x, s.state);
+		} else {
+		    System.err.println("Whoops! Coordinates must be in the bounds of the board in the config file.");
+		}
 	    }
 	}
+        publishFrame();
+    }
+
+    // Replaces the board with the given occupied spots (as returned by
+    // getPoints), at the given generation.  Only safe while stopped.
+    public void load(List<Point> points, long gen) {
+        clear();
+        for (Point p : points) {
+            setCell(p.y, p.x, p.state);
+        }
+        generation = gen;
+        publishFrame();
+    }
+
+    // Same, from the live cells as {x, y} pairs, as HashLife gives them.
+    public void load(int cells[][], long gen) {
+        load(points(cells), gen);
+    }
+
+    // Live cells as Points, from {x, y} pairs (from HashLife or ChunkEngine).
+    private static List<Point> points(int cells[][]) {
+        List<Point> points = new ArrayList<>(cells.length);
+        for (int p[] : cells) {
+            points.add(new Point(p[0], p[1]));
+        }
+        return points;
+    }
+
+    // The live cells as {x, y} pairs, as HashLife takes them.
+    public int[][] getCells() {
+        List<Point> points = getPoints();
+        int cells[][] = new int[points.size()][];
+        for (int k = 0; k < cells.length; k++) {
+            cells[k] = new int[] {points.get(k).x, points.get(k).y};
+        }
+        return cells;
     }
 
     // Returns a representation of the board in which each point represents an occupied spot.
     public List<Point> getPoints() {
+	if (unbounded) {
+	    return points(((ChunkEngine) engine).getCells());
+	}
 	List<Point> points = new ArrayList<>();
-	for(int i = 0; i < n; i++) {
-	    for(int j = 0; j < n; j++) {
-		if (B[i][j] == 1) {
-		    points.add(new Point(j, i));
+	for(int i = 0; i < rows; i++) {
+	    for(int j = 0; j < cols; j++) {
+		int s = cell(i, j);
+		if (s != 0) {
+		    points.add(new Point(j, i, s));
 		}
   	    }
 	}
@@ -575,19 +1494,21 @@ class UI extends JPanel {
     private final JRootPane root;
     private static final int externalBorder = 6;
  
-    public boolean step_switch = false;
-
     private final String outputFile = "output_config.txt";
 
     private static final int stopped = 0;
-    private static final int running = 1;
-    private static final int paused = 2;
+    private static final int running = 1;     // or paused: see c.isPaused()
 
     private int state = stopped;
 
     private int numThreads;
     private int numTasks;
 
+    // The threads that run the game, from the first Run to Quit: runner's
+    // runs each Run's Delegator, and pool's compute the generations.
+    private final ExecutorService runner;
+    private final ExecutorService pool;
+
 
     final JButton runButton = new JButton("Run");
     final JButton pauseButton = new JButton("Pause");
@@ -595,17 +1516,33 @@ class UI extends JPanel {
     final JButton clearButton = new JButton("Clear");
     final JButton quitButton = new JButton("Quit");
     final JButton stepButton = new JButton("Step"); // Added a button that allows the user to proceed in the game by one generation.
+    final JSpinner stepCount = new JSpinner(new SpinnerNumberModel(1, 1, 1000000, 1)); // How many generations Step moves on.
     final JButton configButton = new JButton("Get Configuration"); // Added a button that allows the user to get the current configuration of the board, so long as the game is paused or stopped.
 
+    public LifeBoard getLifeBoard() {
+        return lb;
+    }
+
+    public Coordinator getCoordinator() {
+        return c;
+    }
+
+    public ExecutorService getPool() {
+        return pool;
+    }
+
     // Constructor
     //
-    public UI(int N, RootPaneContainer pane, int pauseIterations,
-              boolean headless, boolean glider, int NT, int K, List<Point> shape) {
+    public UI(int R, int N, RootPaneContainer pane, long frameNanos,
+              boolean headless, boolean glider, EngineFactory ef, int NT, int K, List<Point> shape) {
         final UI u = this;
-        c = new Coordinator(pauseIterations);
-        lb = new LifeBoard(N, c, u, headless, glider, shape);
+        c = new Coordinator(frameNanos);
+        lb = new LifeBoard(R, N, c, u, headless, glider, ef, shape);
         numThreads = NT;
         numTasks = K;
+        runner = Executors.newFixedThreadPool(1);
+        ((ThreadPoolExecutor) runner).prestartAllCoreThreads();
+        pool = Delegator.newPool(NT, Life.getForkJoin(), Life.isVirtual());
 
         final JPanel b = new JPanel();   // button panel
 
@@ -615,40 +1552,53 @@ class UI extends JPanel {
         lb.addMouseListener(new MouseListener() {
             public void mouseClicked(MouseEvent e) {
                 if (state == stopped) {
+                    c.stop();   // in case the last run has not quite stopped
                     lb.toggleClick(e.getX(), e.getY());
                 } // else do nothing
             }
             public void mouseEntered(MouseEvent e) { }
             public void mouseExited(MouseEvent e) { }
-            public void mousePressed(MouseEvent e) { }
+            public void mousePressed(MouseEvent e) {
+                lb.startDrag(e.getX(), e.getY());
+            }
             public void mouseReleased(MouseEvent e) { }
         });
+
+        lb.addMouseMotionListener(new MouseMotionAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                lb.drag(e.getX(), e.getY());
+                if (state == stopped) {
+                    c.stop();
+                    lb.publishFrame();
+                } else if (c.isParked()) {
+                    lb.publishFrame();  // paused: nothing else will
+                }
+            }
+        });
         runButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
+                root.setDefaultButton(pauseButton);
                 if (state == stopped) {
-                    state = running;
-                    root.setDefaultButton(pauseButton);
-                    onRunClick();
-                } else if (state == paused) {
-                    state = running;
-                    root.setDefaultButton(pauseButton);
-                    c.toggle();
+                    start(0);
+                } else {
+                    c.post(Coordinator.RESUME);
                 }
             }
         });
         pauseButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 if (state == running) {
-                    state = paused;
                     root.setDefaultButton(runButton);
-                    c.toggle();
+                    c.post(Coordinator.PAUSE);
                 }
             }
         });
+        // The run stops at the end of the generation it is on; whatever
+        // touches the board next calls c.stop() to be sure it has.
         stopButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 state = stopped;
-                c.stop();
+                c.post(Coordinator.STOP);
                 root.setDefaultButton(runButton);
             }
         });
@@ -662,23 +1612,22 @@ class UI extends JPanel {
         });
         quitButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                System.exit(0);
+                quit();
             }
         });
-	// This button allows the user to look at the game generation by generation.
-	// If the game is currently running, this button will pause the game. 
-	// Otherwise, the button "clicks on" the run button, only allowing it to go 
-	// forward by one generation. This restriction is in the run method of the threads
-	// themselves.
+	// This button allows the user to look at the game generation by generation
+	// (or stepCount generations at a time): the game goes on that many generations
+	// from the one it is on, starting it if need be, and then pauses.  The thread
+	// that updates the board does the counting (see Coordinator.pace).
         stepButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-		step_switch = true;
-  		if (state == running) {
-		    pauseButton.doClick();
-		} else if (state == paused || state == stopped) {
-		    runButton.doClick();
+		int n = (Integer) stepCount.getValue();
+		root.setDefaultButton(runButton);
+		if (state == stopped) {
+		    start(n);
+		} else {
+		    c.post(Coordinator.STEP, n);
 		}
-
             }
         });
 	// Thus buggon allows the user to get the current configuration of the board, so long
@@ -686,11 +1635,11 @@ class UI extends JPanel {
 	// and store the configuration in there.
 	configButton.addActionListener(new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
-		if (state == running) {
+		if (state == running && !c.isPaused()) {
 		    System.err.println("Game must be paused or stopped in order to get configuration.");
-		} else if (state == paused || state == stopped) {
+		} else {
 		    try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile))) {
-			bw.write(buildConfigString(pauseIterations));
+			bw.write(buildConfigString(frameNanos));
 		    } catch (IOException ex) { System.err.println("Error: could not create config file."); }
 		}
 	    }
@@ -704,6 +1653,7 @@ class UI extends JPanel {
         b.add(clearButton);
         b.add(quitButton);
 	b.add(stepButton);
+	b.add(stepCount);
 	b.add(configButton);
 
         // put the LifeBoard canvas and the button panel into the UI:
@@ -720,13 +1670,22 @@ class UI extends JPanel {
     }
 
     // Builds the string that contains all of the information to be put in the config file.
-    public String buildConfigString(int pauseIterations) {
+    public String buildConfigString(long frameNanos) {
 	StringBuilder content = new StringBuilder();
 	content.append("t:");
 	content.append(numThreads);
 	content.append("\n");
-	content.append("s:");
-	content.append(pauseIterations);
+	content.append("f:");
+	content.append(frameNanos / 1e6);
+	content.append("\n");
+	content.append("w:");
+	content.append(lb.cols);
+	content.append("\n");
+	content.append("h:");
+	content.append(lb.rows);
+	content.append("\n");
+	content.append("rule:");
+	content.append(Life.getRule());
 	content.append("\n");
 	content.append("shape:");
 	List<Point> points = lb.getPoints();
@@ -738,11 +1697,38 @@ class UI extends JPanel {
 	return content.toString();
     }
 
-    // Everytime onRunClick is called, it creates a new thread. This new thread creates the other 
-    // threads which then update the board.
+    // Start a new run, which pauses after the given number of generations
+    // if that is more than 0.
+    private void start(int steps) {
+        state = running;
+        c.stop();       // in case the last run has not quite stopped
+        if (steps > 0) {
+            c.post(Coordinator.STEP, steps);
+        }
+        onRunClick();
+    }
+
+    // Everytime onRunClick is called, it hands a new Delegator to the runner thread, which
+    // hands the work to the pool's threads, which then update the board.  The threads are
+    // made once, with the UI, and wait between runs, so a Run starts no new ones.
+    // The Delegator is registered with the Coordinator before it is handed over, so that
+    // a stop that comes before runner starts it still waits for it, and kills it.
     public void onRunClick() {
         Delegator d = new Delegator(lb, c, this, numThreads, numTasks);
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(d);
+        c.register();
+        runner.execute(d);
+    }
+
+    // Stop the game and shut its threads down, then exit: for Quit, and
+    // for closing the window.
+    public void quit() {
+        c.stop();
+        runner.shutdown();
+        pool.shutdown();
+        try {
+            runner.awaitTermination(1, TimeUnit.SECONDS);
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {}
+        System.exit(0);
     }
 }
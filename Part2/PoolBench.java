@@ -0,0 +1,97 @@
+/*
+    PoolBench.java
+
+    Compares the ways Part2's Delegator can run a generation: the fixed
+    pool of -t threads, --forkjoin, and --virtual.  Usage:
+
+        java PoolBench [threads [tasks [size]]]
+
+    For each, reports the generations per second of a random board with
+    the default engine and no delay, the average time from posting a
+    pause to its taking effect (at the end of a generation), from
+    resuming a paused board to its next generation starting, and from
+    starting a stopped board again, on the same pool, to its first
+    generation finishing.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class PoolBench {
+    private static final long warmupMillis = 2000;    // for the JIT
+    private static final long runMillis = 5000;
+    private static final int pauses = 20;
+
+    private static void run(String name, int threads, int tasks, int size,
+                            int leaf, boolean virtual) throws InterruptedException {
+        List<int[]> soup = new ArrayList<>();
+        Random r = new Random(254);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (r.nextInt(3) == 0) {
+                    soup.add(new int[] {j, i});
+                }
+            }
+        }
+        Life.Trial trial = new Life.Trial(size, soup.toArray(new int[0][]),
+                                          threads, tasks, leaf, virtual);
+        Coordinator c = trial.getCoordinator();
+        trial.start();
+
+        Thread.sleep(warmupMillis);
+        long from = trial.getRounds();
+        long start = System.nanoTime();
+        Thread.sleep(runMillis);
+        double perSecond = (trial.getRounds() - from) / ((System.nanoTime() - start) / 1e9);
+
+        long pausing = 0, waited = 0;
+        for (int p = 0; p < pauses; p++) {
+            c.post(Coordinator.PAUSE);
+            while (!c.isPaused()) {
+                Thread.onSpinWait();
+            }
+            pausing += c.getLatency();
+            Thread.sleep(20);
+            long g = trial.getRounds();
+            long t = System.nanoTime();
+            c.post(Coordinator.RESUME);
+            while (trial.getRounds() == g) {
+                Thread.onSpinWait();
+            }
+            waited += System.nanoTime() - t;
+        }
+        trial.stop();
+
+        long restarting = 0;
+        for (int p = 0; p < pauses; p++) {
+            long t = System.nanoTime();
+            trial.start();
+            while (trial.getRounds() < 2) {
+                Thread.onSpinWait();
+            }
+            restarting += System.nanoTime() - t;
+            trial.stop();
+        }
+        trial.shutdown();
+
+        System.err.printf("%-8s %10.1f generations/s %10.1f us to pause %10.1f us to resume %10.1f us to restart\n",
+                          name, perSecond, pausing / 1e3 / pauses, waited / 1e3 / pauses,
+                          restarting / 1e3 / pauses);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0])
+                                        : Runtime.getRuntime().availableProcessors();
+        int tasks = (args.length > 1) ? Integer.parseInt(args[1]) : threads * 4;
+        int size = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+            // the headless board's timestamps
+        System.err.printf("%d threads, %d tasks, %d x %d\n", threads, tasks, size, size);
+
+        run("pool", threads, tasks, size, 0, false);
+        run("forkjoin", threads, tasks, size, size * size / tasks, false);
+        run("virtual", threads, tasks, size, 0, true);
+        System.exit(0);
+    }
+}
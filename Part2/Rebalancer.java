@@ -0,0 +1,112 @@
+/*
+    Rebalancer.java
+
+    Moves the boundaries between the threads' (or tasks') shares of the
+    board as it runs, so that each takes about as long as the others to
+    compute a generation, instead of about as many cells.
+ */
+
+// The board is a list of blocks (see Partition), and part p is the run
+// of blocks [first(p), first(p+1)).  Whoever computes a part records how
+// long it took, and between generations rebalance shares each part's
+// time out among its blocks, in proportion to what they were expected to
+// cost, to update an estimate of every block's cost.  If cutting the
+// blocks afresh by those estimates would shorten the longest part by at
+// least `hysteresis', the new cuts are taken; otherwise the old ones
+// stay, so that timing noise does not move blocks back and forth between
+// threads (and their caches) every generation.
+//
+// record is called by the computing threads, each for its own parts,
+// and everything else by one thread while none of them is computing.
+// Nothing is allocated after the constructor.
+//
+class Rebalancer {
+    private static final double smoothing = 0.25;   // weight of the newest time
+    private static final double hysteresis = 0.1;
+    private static final int pad = 8;               // longs per cache line
+
+    private final double cost[];      // [b]: estimated ns to compute block b
+    private final int cut[];          // part p is blocks [cut[p], cut[p+1])
+    private final int trial[];        // cuts being considered
+    private final long nanos[];       // [p*pad]: time of part p, this generation
+    private final int maxParts;
+    private int parts;
+
+    public int parts() {
+        return parts;
+    }
+
+    // First block of part p; parts beyond the last are empty.
+    //
+    public int first(int p) {
+        return cut[Math.min(p, parts)];
+    }
+
+    // Part p took ns nanoseconds to compute.
+    //
+    public void record(int p, long ns) {
+        nanos[p*pad] += ns;
+    }
+
+    // Update the estimates from the times recorded since the last call,
+    // and move the cuts if that would help enough.  Returns whether they
+    // moved.
+    //
+    public boolean rebalance() {
+        for (int p = 0; p < parts; p++) {
+            double expected = 0;
+            for (int b = cut[p]; b < cut[p+1]; b++) {
+                expected += cost[b];
+            }
+            long ns = nanos[p*pad];
+            nanos[p*pad] = 0;
+            for (int b = cut[p]; b < cut[p+1]; b++) {
+                double share = ns * cost[b] / expected;
+                cost[b] = Math.max(1, (1 - smoothing) * cost[b] + smoothing * share);
+            }
+        }
+        // Parts past the last are empty, but a thread with nothing to do
+        // still records the time it took; that must not carry over to
+        // whichever part it next has, once there are more parts.
+        for (int p = parts; p < maxParts; p++) {
+            nanos[p*pad] = 0;
+        }
+        int n = Partition.cut(cost, maxParts, trial);
+        if (longest(trial, n) >= (1 - hysteresis) * longest(cut, parts)) {
+            return false;
+        }
+        System.arraycopy(trial, 0, cut, 0, n + 1);
+        parts = n;
+        return true;
+    }
+
+    // Estimated time of the longest of the n parts cut by c.
+    //
+    private double longest(int c[], int n) {
+        double max = 0;
+        for (int p = 0; p < n; p++) {
+            double sum = 0;
+            for (int b = c[p]; b < c[p+1]; b++) {
+                sum += cost[b];
+            }
+            max = Math.max(max, sum);
+        }
+        return max;
+    }
+
+    // Constructor.  The board is blocks whose costs are at first taken
+    // to be in proportion to W (their areas, say), cut into at most P
+    // parts.
+    //
+    public Rebalancer(double W[], int P) {
+        maxParts = P;
+        cost = new double[W.length];
+        for (int b = 0; b < W.length; b++) {
+            cost[b] = Math.max(1, W[b]);
+        }
+        cut = new int[P + 1];
+        trial = new int[P + 1];
+        nanos = new long[P*pad];
+        parts = Partition.cut(cost, P, cut);
+    }
+}
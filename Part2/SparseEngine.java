@@ -0,0 +1,326 @@
+/*
+    SparseEngine.java
+
+    Board representation for worlds that are mostly empty: only the live
+    cells are stored, and a generation only looks at them and their
+    neighbours, so its cost grows with the population rather than with
+    the area of the board.
+ */
+
+import java.util.Arrays;
+
+// A cell (i, j) is identified by the key i*cols + j.  The live cells of
+// the current generation are kept as a sorted array of keys, which puts
+// the cells of a range of rows next to each other.  doGeneration counts
+// neighbours by adding each live cell to the neighbourhood counts of the
+// cells around it, in a hash table keyed by cell, and then keeps the
+// cells whose count says they live.  Each call records its results
+// against the rows it covered, and swap gathers them, in row order, into
+// the new sorted array; a row that is computed again (say after a run was
+// stopped part way through a generation) simply replaces its old result.
+// The board is still a torus, exactly as for the dense engines.
+//
+// Only cells next to a live cell are ever looked at, so the engine cannot
+// follow rules with B0, under which empty space comes to life.
+//
+class SparseEngine implements LifeEngine {
+    private long live[];      // keys of live cells, in increasing order
+    private int population;   // number of keys used in live
+
+    private final Part rowPart[];
+        // result of the doGeneration call that last computed each row
+
+    private final ThreadLocal<CellCounts> counts = new ThreadLocal<CellCounts>() {
+        protected CellCounts initialValue() {
+            return new CellCounts();
+        }
+    };
+
+    private final Coordinator c;
+    private final int rows;   // number of cells down the board
+    private final int cols;   // number of cells across the board
+    private final int rule[]; // the rule, as in Rule.next
+
+    // Sorted keys of the next generation of the rows of one doGeneration call.
+    //
+    private static class Part {
+        final long cells[];
+
+        Part(long[] cs) {
+            cells = cs;
+        }
+    }
+
+    private long key(int i, int j) {
+        return (long) i*cols + j;
+    }
+
+    // Index in live of the first key >= k.
+    //
+    private int lowerBound(long k) {
+        int lo = 0, hi = population;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (live[mid] < k) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int get(int i, int j) {
+        long k = key(i, j);
+        int at = lowerBound(k);
+        return (at < population && live[at] == k) ? 1 : 0;
+    }
+
+    public void set(int i, int j, int v) {
+        long k = key(i, j);
+        int at = lowerBound(k);
+        boolean alive = at < population && live[at] == k;
+        if (v != 0 && !alive) {
+            if (population == live.length) {
+                live = Arrays.copyOf(live, Math.max(16, 2*population));
+            }
+            System.arraycopy(live, at, live, at+1, population-at);
+            live[at] = k;
+            ++population;
+        } else if (v == 0 && alive) {
+            System.arraycopy(live, at+1, live, at, population-at-1);
+            --population;
+        }
+    }
+
+    public void clear() {
+        population = 0;
+    }
+
+    public int getPopulation() {
+        return population;
+    }
+
+    public long population() {
+        return population;
+    }
+
+    // Add live cells [from, to) of live to the neighbourhood counts of
+    // the cells around them that fall in rows [start, end).
+    //
+    private void spread(CellCounts cc, int from, int to, int start, int end) {
+        for (int k = from; k < to; k++) {
+            int i = (int) (live[k] / cols);
+            int j = (int) (live[k] % cols);
+            for (int di = -1; di <= 1; di++) {
+                int ti = i + di;
+                if (ti < 0) {
+                    ti += rows;
+                } else if (ti >= rows) {
+                    ti -= rows;
+                }
+                if (ti < start || ti >= end) {
+                    continue;
+                }
+                for (int dj = -1; dj <= 1; dj++) {
+                    int tj = j + dj;
+                    if (tj < 0) {
+                        tj += cols;
+                    } else if (tj >= cols) {
+                        tj -= cols;
+                    }
+                    // A cell counts itself as 1 and each live neighbour as
+                    // 2, so a count of 2n+1 means alive with n neighbours.
+                    cc.add(key(ti, tj), (di == 0 && dj == 0) ? 1 : 2);
+                }
+            }
+        }
+    }
+
+    // Add the live cells of row r to the counts.
+    //
+    private void spreadRow(CellCounts cc, int r, int start, int end) {
+        spread(cc, lowerBound(key(r, 0)), lowerBound(key(r+1, 0)), start, end);
+    }
+
+    public void doGeneration(int start, int end) throws Coordinator.KilledException {
+        if (start >= end) {
+            return;
+        }
+        CellCounts cc = counts.get();
+        cc.clear();
+
+        // Cells in rows [start, end) are affected by live cells in those
+        // rows and in the rows just above and below them.
+        if (end - start >= rows - 1) {
+            spread(cc, 0, population, start, end);
+        } else {
+            spreadRow(cc, (start+rows-1) % rows, start, end);
+            spread(cc, lowerBound(key(start, 0)), lowerBound(key(end, 0)),
+                   start, end);
+            spreadRow(cc, end % rows, start, end);
+        }
+
+        long next[] = new long[cc.size()];
+        int n = 0;
+        for (int slot = 0; slot < cc.capacity(); slot++) {
+            if (!cc.used(slot)) {
+                continue;
+            }
+            // hesitate() once for every cell that could change.
+            c.hesitate();
+            // The count is already 2n+state, just what the rule is
+            // indexed by.
+            if (rule[cc.value(slot)] != 0) {
+                next[n++] = cc.key(slot);
+            }
+        }
+        next = Arrays.copyOf(next, n);
+        Arrays.sort(next);
+        Part p = new Part(next);
+        for (int r = start; r < end; r++) {
+            rowPart[r] = p;
+        }
+    }
+
+    // Index in the sorted array a of the first key >= k.
+    //
+    private static int lowerBound(long[] a, long k) {
+        int at = Arrays.binarySearch(a, k);
+        return (at >= 0) ? at : -at - 1;
+    }
+
+    public void swap() {
+        long next[] = new long[16];
+        int n = 0;
+        for (int r = 0; r < rows; ) {
+            // Copy the rows [r, e) that share a Part in one go.
+            Part p = rowPart[r];
+            int e = r+1;
+            while (e < rows && rowPart[e] == p) {
+                e++;
+            }
+            if (p != null) {
+                int from = lowerBound(p.cells, key(r, 0));
+                int to = lowerBound(p.cells, key(e, 0));
+                if (n + to - from > next.length) {
+                    next = Arrays.copyOf(next, Math.max(2*next.length, n + to - from));
+                }
+                System.arraycopy(p.cells, from, next, n, to - from);
+                n += to - from;
+            }
+            r = e;
+        }
+        Arrays.fill(rowPart, null);
+        live = next;
+        population = n;
+    }
+
+    // Constructor
+    //
+    public SparseEngine(int R, int N, Coordinator C) {
+        this(R, N, C, Rule.LIFE);
+    }
+
+    public SparseEngine(int R, int N, Coordinator C, Rule L) {
+        if (L.bornFromNothing()) {
+            throw new IllegalArgumentException("SparseEngine cannot run " + L);
+        }
+        rule = L.next;
+        rows = R;
+        cols = N;
+        c = C;
+        live = new long[16];
+        population = 0;
+        rowPart = new Part[rows];
+    }
+}
+
+// Open-addressing hash table from cell keys (which are never negative)
+// to int counts, without boxing either.
+//
+class CellCounts {
+    private static final long EMPTY = -1;
+
+    private long keys[];
+    private int values[];
+    private int size;
+    private int shift;   // 64 - log2(capacity)
+
+    public CellCounts() {
+        keys = new long[64];
+        values = new int[64];
+        Arrays.fill(keys, EMPTY);
+        shift = 64 - 6;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean used(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public long key(int slot) {
+        return keys[slot];
+    }
+
+    public int value(int slot) {
+        return values[slot];
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    private int slot(long k) {
+        return (int) ((k * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // Add v to the count for key k, which starts at 0.
+    //
+    public void add(long k, int v) {
+        int mask = keys.length - 1;
+        int s = slot(k);
+        while (keys[s] != EMPTY) {
+            if (keys[s] == k) {
+                values[s] += v;
+                return;
+            }
+            s = (s + 1) & mask;
+        }
+        keys[s] = k;
+        values[s] = v;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long oldKeys[] = keys;
+        int oldValues[] = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        --shift;
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int s = slot(oldKeys[i]);
+                while (keys[s] != EMPTY) {
+                    s = (s + 1) & mask;
+                }
+                keys[s] = oldKeys[i];
+                values[s] = oldValues[i];
+            }
+        }
+    }
+}
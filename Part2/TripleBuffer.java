@@ -0,0 +1,56 @@
+/*
+    TripleBuffer.java
+
+    Hands snapshots of the board from the thread that finishes each
+    generation to the Swing thread that paints them, without either ever
+    waiting for the other.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// There are three frames.  The publisher owns one (back), which it fills
+// and then swaps for the one in the middle; the renderer owns another
+// (front), which it paints, and swaps it for the middle one only if that
+// has been published since it last looked.  The index of the middle frame
+// and whether it is fresh are kept together in one AtomicInteger, so that
+// each swap is a single getAndSet: the publisher can get ahead of the
+// renderer by any number of frames (the ones nobody paints are simply
+// overwritten), and the renderer always paints the last complete one.
+//
+// Only one thread at a time may publish, and only one may render.
+//
+class TripleBuffer {
+    private static final int fresh = 4;     // above the frame indices
+
+    private final byte frames[][];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;       // the publisher's
+    private int front = 2;      // the renderer's
+
+    // The frame for the publisher to fill next.
+    //
+    public byte[] back() {
+        return frames[back];
+    }
+
+    // Make the frame returned by back the latest.
+    //
+    public void publish() {
+        back = middle.getAndSet(back | fresh) & ~fresh;
+    }
+
+    // The latest frame published, to be read until the next call.
+    //
+    public byte[] latest() {
+        if ((middle.get() & fresh) != 0) {
+            front = middle.getAndSet(front) & ~fresh;
+        }
+        return frames[front];
+    }
+
+    // Constructor.  Each frame is of size bytes, and at first all zero.
+    //
+    public TripleBuffer(int size) {
+        frames = new byte[3][size];
+    }
+}
@@ -0,0 +1,79 @@
+/*
+    VectorKernel.java
+
+    RowKernel that applies the rule to as many cells at a time as the
+    machine's vector registers hold, using the jdk.incubator.vector API.
+
+    This file is kept apart from the rest of the program because it only
+    compiles with the incubator module:
+
+        javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorKernel.java
+ */
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Each iteration loads the eight neighbours of a vector of cells as eight
+// vectors at fixed offsets and adds them.  The rule is held as one int
+// with bit 2n+s set if a cell in state s with n neighbours lives, and
+// every lane shifts it by its own 2n+s, so any rule costs the same.
+// Cells left over at the end of the run are done one at a time.
+//
+class VectorKernel implements RowKernel {
+    private static final VectorSpecies<Integer> S = IntVector.SPECIES_PREFERRED;
+
+    private final int next[];   // the rule, as in Rule.next
+    private final int bits;     // the rule, as bits
+
+    public int step(int[] B, int[] A, int k, int n, int stride, int h) {
+        int d = 0;
+        for (int r = 0; r < h; r++) {
+            d |= stepRow(B, A, k + r*stride, n, stride);
+        }
+        return d;
+    }
+
+    private int stepRow(int[] B, int[] A, int k, int n, int stride) {
+        IntVector one = IntVector.broadcast(S, 1);
+        IntVector rule = IntVector.broadcast(S, bits);
+        IntVector diff = IntVector.zero(S);
+        int end = k + n;
+        int up = -stride, down = stride;
+        for (; k <= end - S.length(); k += S.length()) {
+            IntVector sum = IntVector.fromArray(S, B, k+up-1)
+                       .add(IntVector.fromArray(S, B, k+up))
+                       .add(IntVector.fromArray(S, B, k+up+1))
+                       .add(IntVector.fromArray(S, B, k-1))
+                       .add(IntVector.fromArray(S, B, k+1))
+                       .add(IntVector.fromArray(S, B, k+down-1))
+                       .add(IntVector.fromArray(S, B, k+down))
+                       .add(IntVector.fromArray(S, B, k+down+1));
+            IntVector x = IntVector.fromArray(S, B, k);
+            IntVector y = rule.lanewise(VectorOperators.LSHR, sum.add(sum).add(x))
+                              .and(one);
+            y.intoArray(A, k);
+            diff = diff.or(y.lanewise(VectorOperators.XOR, x));
+        }
+        int d = diff.reduceLanes(VectorOperators.OR);
+        for (; k < end; k++) {
+            int sum = B[k+up-1] + B[k+up] + B[k+up+1]
+                    + B[k-1]              + B[k+1]
+                    + B[k+down-1] + B[k+down] + B[k+down+1];
+            A[k] = next[2*sum + B[k]];
+            d |= A[k] ^ B[k];
+        }
+        return d;
+    }
+
+    // Constructor
+    //
+    public VectorKernel(Rule rule) {
+        next = rule.next;
+        int b = 0;
+        for (int i = 0; i < next.length; i++) {
+            b |= next[i] << i;
+        }
+        bits = b;
+    }
+}